@@ -0,0 +1,72 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.storage.ScheduleVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the PlantSchedules that need to be watered, marking each one as it is visited
+ * PlantSchedules that are not due today are never visited, and would not be counted
+ * The PlantSchedules changed by the visit are kept if they are written back
+ *
+ * This is the NotificationJobService's evaluation of each PlantSchedule, and does not use the Android
+ * framework so it can also be benchmarked on the JVM
+ */
+/*Package-Private*/ class DueCounter implements ScheduleVisitor {
+
+    private final boolean lastJobWasToday;
+    private final boolean writeBack;
+    // every PlantSchedule is evaluated against the same day
+    private final int today;
+    private int numPlants = 0;
+    // PlantSchedules are visited in the order they were added, so this is the last one evaluated
+    private long lastId = PlantSchedule.NO_ID;
+    private final List<PlantSchedule> changedList = new ArrayList<>();
+
+    /*
+     * @param today the day to evaluate the PlantSchedules for, from PlantSchedule.today()
+     * @param lastJobWasToday whether the job already ran today
+     * @param writeBack whether the changed PlantSchedules will be written back
+     */
+    /*Package-Private*/ DueCounter(int today, boolean lastJobWasToday, boolean writeBack) {
+        this.today = today;
+        this.lastJobWasToday = lastJobWasToday;
+        this.writeBack = writeBack;
+    }
+
+    @Override
+    public void visit(PlantSchedule sched) {
+        lastId = sched.getId();
+        sched.updateReferenceDate(today);
+
+        boolean alreadySet = sched.getWaterToday();
+
+        // if this is the day's first alarm and the plant should be watered today,
+        // but waterToday is false, we assume that it has been watered and do not count it
+        if (!(lastJobWasToday && !alreadySet) && sched.shouldWaterToday(today)) {
+            sched.setWaterToday(true);
+            ++numPlants;
+        }
+
+        if (writeBack && sched.isDirty()) {
+            changedList.add(sched);
+        }
+    }
+
+    /*Package-Private*/ int getToday() {
+        return today;
+    }
+
+    /*Package-Private*/ int getNumPlants() {
+        return numPlants;
+    }
+
+    /*Package-Private*/ long getLastId() {
+        return lastId;
+    }
+
+    /*Package-Private*/ List<PlantSchedule> getChangedList() {
+        return changedList;
+    }
+}
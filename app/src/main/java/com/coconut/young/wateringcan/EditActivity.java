@@ -12,6 +12,8 @@ import android.widget.EditText;
 
 import com.coconut.young.wateringcan.settings.DebugActivity;
 
+import java.text.ParseException;
+
 /**
  * The Activity used to add or edit a PlantSchedule
  */
@@ -43,16 +45,19 @@ public class EditActivity extends Activity {
                 String name = nameInput.getText().toString();
                 String nextDate = dateInput.getText().toString();
                 int waterInterval = 0;
+                String error = null;
                 try {
-                    waterInterval = Integer.valueOf(intervalInput.getText().toString());
-                } catch (NumberFormatException e) {
-                    e.printStackTrace();
+                    // the same rules are applied to imported PlantSchedules
+                    waterInterval = ScheduleInput.parse(name, nextDate, intervalInput.getText().toString())
+                            .getWaterInterval();
+                } catch (ParseException e) {
+                    error = e.getMessage();
                 }
 
-                if (waterInterval <= 0 && !DebugActivity.DEBUG.equals(name)) {
+                if (error != null && !DebugActivity.DEBUG.equals(name)) {
                     AlertDialog.Builder warningBuilder = new AlertDialog.Builder(EditActivity.this);
                     warningBuilder.setTitle("Invalid Schedule")
-                        .setMessage("Please enter a positive number of days")
+                        .setMessage(error)
                         .setNeutralButton("OK", null);
                     warningBuilder.show();
 
@@ -62,6 +67,7 @@ public class EditActivity extends Activity {
                     int update = intent.getIntExtra("update", -1);
                     if (update != -1) {
                         returnIntent.putExtra("update", update);
+                        returnIntent.putExtra("id", intent.getLongExtra("id", PlantSchedule.NO_ID));
                     }
 
                     returnIntent.putExtra("name", name);
@@ -92,6 +98,7 @@ public class EditActivity extends Activity {
             public void onClick(View view) {
                 Intent returnIntent = new Intent();
                 returnIntent.putExtra("update", update);
+                returnIntent.putExtra("id", intent.getLongExtra("id", PlantSchedule.NO_ID));
                 returnIntent.putExtra("delete", true);
                 setResult(RESULT_OK, returnIntent);
                 finish();
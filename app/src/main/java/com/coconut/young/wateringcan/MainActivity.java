@@ -1,26 +1,40 @@
 package com.coconut.young.wateringcan;
 
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.preference.PreferenceManager;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
-import android.widget.AdapterView;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
 import android.widget.ImageButton;
-import android.widget.ListView;
+import android.widget.Toast;
 
 import com.coconut.young.wateringcan.settings.DebugActivity;
 import com.coconut.young.wateringcan.settings.SettingsMenu;
+import com.coconut.young.wateringcan.storage.ScheduleRepository;
+import com.coconut.young.wateringcan.storage.ScheduleSearch;
+import com.coconut.young.wateringcan.storage.ScheduleTransfer;
+import com.coconut.young.wateringcan.storage.ScheduleWriter;
+import com.coconut.young.wateringcan.utils.Clock;
+import com.coconut.young.wateringcan.utils.DateCodec;
 import com.coconut.young.wateringcan.utils.Utilities;
 
+import java.io.IOException;
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
 
 /*
  * Watering Can is a lightweight app for tracking when you should water your plants. Each
@@ -32,28 +46,48 @@ import java.util.List;
  * @author G Weekley
  */
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements ScheduleRepository.Observer {
 
     public static final String TAG = "WateringCan";
     public static final String SHARED_PREFERENCES_NAME = "WateringCanPreferences";
     private static final String DEBUG_ENABLED = "debugEnabled";
 
-    private static List<PlantSchedule> scheduleList;
-    public static PlantScheduleAdapter adapter;
+    // the files chosen in the SettingsMenu are returned with these request codes
+    public static final int REQUEST_IMPORT = 2;
+    public static final int REQUEST_EXPORT_CSV = 3;
+    public static final int REQUEST_EXPORT_JSON = 4;
 
     private static SharedPreferences sharedPref;
 
+    private ScheduleRepository repository;
+    private ScheduleSearch search;
+    private PlantScheduleAdapter adapter;
+    private RecyclerView listView;
+    private View loadingView;
+    // an EditActivity result that arrived before the PlantSchedules were loaded
+    private Intent pendingResult;
+    // the running import or export, if any
+    private ScheduleTransfer transfer;
+    private AlertDialog transferDialog;
+    // whether the deferred start up work has run
+    private boolean started = false;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // only what the first frame needs runs before it, the rest waits until the main thread is idle
+        final StartupTrace startup = new StartupTrace();
+
+        startup.begin("MainActivity.setContentView");
         setContentView(R.layout.activity_main);
+        startup.end();
 
+        startup.begin("MainActivity.bindViews");
         sharedPref = getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
-        scheduleList = Utilities.loadScheduleList(sharedPref);
+        repository = ScheduleRepository.getInstance(this);
 
         int menu = sharedPref.getBoolean(DEBUG_ENABLED, false) ? R.menu.popup_menu_full : R.menu.popup_menu;
         createMenu(menu);
-        PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
 
         // The "Add a new PlantSchedule" button, opens the EditActivity
         FloatingActionButton fab = findViewById(R.id.add_plant);
@@ -61,54 +95,193 @@ public class MainActivity extends AppCompatActivity {
         fab.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
+                if (!repository.isLoaded()) {
+                    return;
+                }
                 Intent myIntent = new Intent(MainActivity.this, EditActivity.class);
                 // pass it the current date by default
-                myIntent.putExtra("date", PlantSchedule.DATE_FORMAT.format(Calendar.getInstance().getTime()));
+                myIntent.putExtra("date", DateCodec.formatDate(Clock.getInstance().currentTimeMillis()));
                 startActivityForResult(myIntent, 1);
             }
         });
 
-        ListView listView = findViewById(android.R.id.list);
-
-        adapter = new PlantScheduleAdapter(MainActivity.this,
-                scheduleList);
+        listView = findViewById(R.id.schedule_list);
         assert listView != null;
-        listView.setAdapter(adapter);
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        listView.setLayoutManager(layoutManager);
+        listView.setHasFixedSize(true);
+        // only the PlantSchedules near the visible rows are kept loaded
+        listView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int posit, long l) {
-                PlantSchedule item = adapter.getItem(posit);
-                assert item != null;
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (adapter.getSource() != repository) {
+                    return;
+                }
+                repository.setVisibleRange(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
+            }
+        });
 
+        adapter = new PlantScheduleAdapter(MainActivity.this, repository, new PlantScheduleAdapter.OnScheduleClickListener() {
+            @Override
+            public void onScheduleClick(PlantSchedule item, int posit) {
                 Intent myIntent = new Intent(MainActivity.this, EditActivity.class);
                 // to edit an item, pass it's info to the EditActivity
                 myIntent.putExtra("update", posit);
+                myIntent.putExtra("id", item.getId());
                 myIntent.putExtra("name", item.getName());
-                myIntent.putExtra("date", PlantSchedule.DATE_FORMAT.format(item.getRefDate()));
+                myIntent.putExtra("date", DateCodec.formatDay(item.getRefDay()));
                 myIntent.putExtra("interval", item.getWaterInterval());
                 startActivityForResult(myIntent, 1);
             }
         });
-        adapter.notifyDataSetChanged();
+        listView.setAdapter(adapter);
+
+        // while the user types in the search box, the list shows the PlantSchedules whose name starts with it
+        search = new ScheduleSearch(this, new ScheduleSearch.Listener() {
+            @Override
+            public void onResultsReset() {
+                if (adapter.getSource() == search) {
+                    adapter.notifyDataSetChanged();
+                }
+            }
+
+            @Override
+            public void onResultsAdded(int position, int count) {
+                if (adapter.getSource() == search) {
+                    adapter.notifyItemRangeInserted(position, count);
+                }
+            }
+
+            @Override
+            public void onResultChanged(int position) {
+                if (adapter.getSource() == search) {
+                    adapter.notifyItemChanged(position);
+                }
+            }
+        });
+        repository.addObserver(search);
+
+        EditText searchText = findViewById(R.id.search);
+        assert searchText != null;
+        searchText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                String query = s.toString().trim();
+                if (query.equals(search.getQuery())) {
+                    return;
+                }
+                search.search(query);
+                adapter.setSource(query.isEmpty() ? repository : search);
+            }
+        });
+
+        startup.end();
+
+        // the PlantSchedules stay loaded while the process lives, so they are usually shown right away
+        // otherwise show the placeholder until they are loaded in the background
+        startup.begin("MainActivity.load");
+        loadingView = findViewById(R.id.loading);
+        repository.setOrder(getSortPreference());
+        repository.addObserver(this);
+        if (repository.isLoaded()) {
+            loadingView.setVisibility(View.GONE);
+        } else {
+            repository.load();
+        }
+        startup.end();
+
+        // an import or export started before a configuration change keeps running, show its progress again
+        if (ScheduleTransfer.getRunning() != null) {
+            showTransfer(ScheduleTransfer.getRunning());
+        }
+
+        // once the first frame is drawn, finish starting when the main thread has nothing else to do
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                startup.mark("firstFrame");
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        startup.begin("MainActivity.deferred");
+                        startDeferred();
+                        startup.end();
+                        startup.finish(sharedPref);
+                        return false;
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /*
+     * The start up work the first frame does not need
+     */
+    private void startDeferred() {
+        PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
 
         // create the notification channel
         Utilities.createNotificationChannel(this);
 
         // set up the alarm intent to update every schedule's icon
-        Utilities.scheduleNextJob(MainActivity.this,sharedPref);
+        Utilities.scheduleNextJobInBackground(MainActivity.this, sharedPref);
+        started = true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.removeObserver(this);
+        repository.removeObserver(search);
+        if (transfer != null) {
+            // a recreated activity takes over the transfer, it only stops when the user leaves
+            if (isFinishing()) {
+                transfer.cancel();
+            }
+            transfer.setListener(null);
+            transferDialog.dismiss();
+        }
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        Utilities.saveScheduleList(sharedPref, scheduleList);
-        Utilities.scheduleNextJob(MainActivity.this, sharedPref);
+        // every change is already recorded, start writing it before the activity may be stopped
+        repository.flush();
+        Utilities.scheduleNextJobInBackground(MainActivity.this, sharedPref);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        // start writing any change made since onPause, the main thread never waits for the writes,
+        // which finish on the ScheduleWriter's thread after the activity is gone
+        ScheduleWriter.getInstance(this).flush();
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        Utilities.scheduleNextJob(MainActivity.this, sharedPref);
+        adapter.checkDay();
+        // the order may have been changed in the SettingsActivity
+        repository.setOrder(getSortPreference());
+        repository.checkDay();
+        // when the activity is created, the job is scheduled once it has started
+        if (started) {
+            Utilities.scheduleNextJobInBackground(MainActivity.this, sharedPref);
+        }
     }
 
     // this method is called when returning from the EditActivity
@@ -117,53 +290,194 @@ public class MainActivity extends AppCompatActivity {
 
         if (requestCode == 1) {
             if (resultCode == RESULT_OK) {
-
-                String name = data.getStringExtra("name");
-                // If the name of the new plant is DEBUG, expose the Debug menu option
-                if (DebugActivity.DEBUG.equals(name)) {
-                    sharedPref.edit().putBoolean(DEBUG_ENABLED, true).apply();
-                    createMenu(R.menu.popup_menu_full);
+                if (!repository.isLoaded()) {
+                    // the activity was recreated, apply the result once the PlantSchedules it refers to are loaded
+                    pendingResult = data;
                     return;
                 }
+                applyEditResult(data);
+            }
+        } else if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+            startTransfer(requestCode, data.getData());
+        }
+    }
 
-                int update = data.getIntExtra("update", -1);
+    /*
+     * Imports or exports the PlantSchedules, showing the progress until the transfer is finished or cancelled
+     *
+     * @param requestCode the request code the file was chosen with
+     * @param uri the chosen file
+     */
+    private void startTransfer(int requestCode, Uri uri) {
+        if (transfer != null) {
+            Log.w(TAG, "Transfer already running");
+            return;
+        }
 
-                if (data.getBooleanExtra("delete", false)) {
-                    Log.i(TAG, "Deleting " + update);
-                    scheduleList.remove(update);
-                    adapter.notifyDataSetChanged();
-                    Utilities.saveScheduleList(sharedPref, scheduleList);
-                    return;
-                }
+        ScheduleTransfer newTransfer = new ScheduleTransfer(this);
+        if (requestCode == REQUEST_IMPORT) {
+            newTransfer.startImport(uri);
+        } else {
+            newTransfer.startExport(uri, requestCode == REQUEST_EXPORT_JSON
+                    ? ScheduleTransfer.FORMAT_JSON : ScheduleTransfer.FORMAT_CSV);
+        }
+        showTransfer(newTransfer);
+    }
 
+    /*
+     * Shows the progress of a running transfer until it is finished or cancelled
+     */
+    private void showTransfer(ScheduleTransfer runningTransfer) {
+        transfer = runningTransfer;
+        final boolean isImport = transfer.isImport();
+
+        transferDialog = new AlertDialog.Builder(this)
+                .setTitle(isImport ? R.string.import_title : R.string.export_title)
+                .setMessage(getString(R.string.transfer_progress, 0))
+                .setCancelable(false)
+                .setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        transfer.cancel();
+                    }
+                })
+                .show();
+
+        transfer.setListener(new ScheduleTransfer.Listener() {
+            @Override
+            public void onProgress(int count) {
+                if (transferDialog.isShowing()) {
+                    transferDialog.setMessage(getString(R.string.transfer_progress, count));
+                }
+            }
 
-                Date nextDate = null;
-                try {
-                    nextDate = PlantSchedule.DATE_FORMAT.parse(data.getStringExtra("date"));
-                } catch (ParseException e) {
-                    e.printStackTrace();
+            @Override
+            public void onFinished(int count, int skipped, IOException error) {
+                boolean cancelled = transfer.isCancelled();
+                transfer = null;
+                if (isImport && count > 0) {
+                    // the imported PlantSchedules were added to the ScheduleStore directly
+                    repository.refresh();
+                    Utilities.scheduleNextJobInBackground(MainActivity.this, sharedPref);
+                }
+                transferDialog.dismiss();
+
+                String message;
+                if (error != null) {
+                    message = getString(R.string.transfer_failed, count);
+                } else if (cancelled) {
+                    message = getString(R.string.transfer_cancelled, count);
+                } else if (isImport) {
+                    message = getString(R.string.import_done, count, skipped);
+                } else {
+                    message = getString(R.string.export_done, count);
                 }
-                assert nextDate != null;
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
 
-                int waterInterval = data.getIntExtra("interval", -1);
+    /*
+     * Applies an EditActivity result to the PlantSchedule list
+     *
+     * @param data the Intent returned by the EditActivity
+     */
+    private void applyEditResult(Intent data) {
+        String name = data.getStringExtra("name");
+        // If the name of the new plant is DEBUG, expose the Debug menu option
+        if (DebugActivity.DEBUG.equals(name)) {
+            sharedPref.edit().putBoolean(DEBUG_ENABLED, true).apply();
+            createMenu(R.menu.popup_menu_full);
+            return;
+        }
 
-                Log.i(TAG, "Got result " + update + " " + name + " " + PlantSchedule.DATE_FORMAT.format(nextDate) + " " + waterInterval);
-                PlantSchedule newSchedule = new PlantSchedule(name, nextDate, waterInterval);
+        int update = data.getIntExtra("update", -1);
+        // the PlantSchedule is found by id, its page may have been dropped while the EditActivity was open
+        long id = data.getLongExtra("id", PlantSchedule.NO_ID);
+
+        if (data.getBooleanExtra("delete", false)) {
+            Log.i(TAG, "Deleting " + update);
+            repository.remove(id);
+            return;
+        }
 
-                // is this PlantSchedule a new one or replacing an old one?
-                if (update != -1) {
-                    scheduleList.add(update, newSchedule);
-                    scheduleList.remove(update + 1);
-                } else {
-                    scheduleList.add(newSchedule);
-                }
 
-                adapter.notifyDataSetChanged();
-                Utilities.saveScheduleList(sharedPref, scheduleList);
+        long nextDate;
+        try {
+            nextDate = DateCodec.parseDayStart(data.getStringExtra("date"));
+        } catch (ParseException e) {
+            Log.e(TAG, "Exception parsing date from EditActivity", e);
+            return;
+        }
+
+        int waterInterval = data.getIntExtra("interval", -1);
+
+        Log.i(TAG, "Got result " + update + " " + name + " " + DateCodec.formatDate(nextDate) + " " + waterInterval);
+        PlantSchedule newSchedule = new PlantSchedule(name, nextDate, waterInterval);
+
+        // is this PlantSchedule a new one or replacing an old one?
+        if (update != -1) {
+            repository.replace(id, newSchedule);
+        } else {
+            repository.add(newSchedule);
+        }
+    }
+
+    @Override
+    public void onLoaded() {
+        loadingView.setVisibility(View.GONE);
+        if (adapter.getSource() == repository) {
+            adapter.notifyDataSetChanged();
+        }
+
+        if (pendingResult != null) {
+            applyEditResult(pendingResult);
+            pendingResult = null;
+        }
+    }
+
+    @Override
+    public void onRangeLoaded(int position, int count) {
+        if (adapter.getSource() == repository) {
+            // the row after the range may start a group, which is only known once the row before it is loaded
+            adapter.notifyItemRangeChanged(position, Math.min(count + 1, adapter.getItemCount() - position));
+        }
+    }
+
+    @Override
+    public void onChanged(int position) {
+        if (adapter.getSource() == repository) {
+            adapter.notifyItemChanged(position);
+        }
+    }
+
+    @Override
+    public void onInserted(int position) {
+        if (adapter.getSource() == repository) {
+            adapter.notifyItemInserted(position);
+        }
+    }
+
+    @Override
+    public void onRemoved(int position) {
+        if (adapter.getSource() == repository) {
+            adapter.notifyItemRemoved(position);
+            // the row that takes the removed one's place may now start a group
+            if (position < adapter.getItemCount()) {
+                adapter.notifyItemChanged(position);
             }
         }
     }
 
+    /**
+     * @return the order the user chose for the list, one of the ScheduleStore orders
+     */
+    private int getSortPreference() {
+        SharedPreferences defaultSharedPref = PreferenceManager.getDefaultSharedPreferences(this);
+        return Integer.parseInt(defaultSharedPref.getString(getString(R.string.pref_sort_key),
+                getString(R.string.pref_sort_default)));
+    }
+
     /**
      * For a given Menu ID, add a SettingsMenu to the settings button
      *
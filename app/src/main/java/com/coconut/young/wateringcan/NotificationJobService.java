@@ -1,33 +1,37 @@
 package com.coconut.young.wateringcan;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.app.TaskStackBuilder;
 import android.app.job.JobParameters;
 import android.app.job.JobService;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
 import com.coconut.young.wateringcan.settings.DebugActivity;
+import com.coconut.young.wateringcan.storage.JobHistory;
+import com.coconut.young.wateringcan.storage.JobRun;
+import com.coconut.young.wateringcan.storage.ScheduleRepository;
+import com.coconut.young.wateringcan.storage.ScheduleStore;
+import com.coconut.young.wateringcan.storage.ScheduleWriter;
+import com.coconut.young.wateringcan.utils.Clock;
+import com.coconut.young.wateringcan.utils.DateCodec;
+import com.coconut.young.wateringcan.utils.JobReconciler;
 import com.coconut.young.wateringcan.utils.Utilities;
 
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
 
 import static com.coconut.young.wateringcan.MainActivity.SHARED_PREFERENCES_NAME;
 import static com.coconut.young.wateringcan.PlantSchedule.ONE_DAY_IN_MILLIS;
-import static com.coconut.young.wateringcan.utils.Utilities.FULL_DATE_FORMAT;
 
 /**
- * This JobService loads the PlantSchedules from SharedPreferences, determines how many plants
- * need to be watered, and displays a notification if that number is > 0
+ * This JobService loads the PlantSchedules due today from the ScheduleStore, determines how many plants
+ * need to be watered, and shows them in the ReminderNotifier's notification, which is removed once none do
+ * The PlantSchedules are read and written on the ScheduleWriter's thread, after any changes the user made,
+ * and the changes are then applied to the ScheduleRepository so the MainActivity shows them
+ * If the system stops the job, it stops between PlantSchedules and keeps the ones it evaluated,
+ * and the rescheduled job resumes after them
  * This job is scheduled for every PREF_TIME and every PREF_FREQ afterwards
  * (Defaults are 6:30 AM and 12 hours, respectively)
  */
@@ -35,125 +39,173 @@ public class NotificationJobService extends JobService {
 
     private static final String TAG = "WateringCan/Service";
 
+    // the progress of a stopped run, so the next run on the same day resumes it
+    private static final String RESUME_DAY = "jobResumeDay";
+    private static final String RESUME_AFTER_ID = "jobResumeAfterId";
+    private static final String RESUME_LAST_JOB_WAS_TODAY = "jobResumeLastJobWasToday";
+    private static final String RESUME_NUM_PLANTS = "jobResumeNumPlants";
+    private static final int NO_DAY = Integer.MIN_VALUE;
+
+    // the run in progress, which onStopJob stops
+    private volatile JobRun currentRun;
+
     @Override
-    public boolean onStartJob(JobParameters params) {
+    public boolean onStartJob(final JobParameters params) {
 
         Log.i(TAG, "In NotificationJobService");
-        SharedPreferences sharedPref = this.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+        final SharedPreferences sharedPref = this.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        long currentTime = Clock.getInstance().currentTimeMillis();
+        // the stages of the run are timed and kept in the JobHistory, shown in the DebugActivity
+        final JobRun jobRun = new JobRun(currentTime, JobReconciler.getTrigger(params.getExtras()));
+        currentRun = jobRun;
 
-        Date lastJobDate;
+        long lastJobTime;
         try {
-             lastJobDate = FULL_DATE_FORMAT.parse(
-                    sharedPref.getString(DebugActivity.DEBUG_LAST, ""));
+            lastJobTime = DateCodec.parseTimestamp(sharedPref.getString(DebugActivity.DEBUG_LAST, ""));
         } catch (ParseException e) {
             Log.w(TAG, "No recorded last alarm");
-            lastJobDate = new Date();
-            lastJobDate.setTime(lastJobDate.getTime() - ONE_DAY_IN_MILLIS);
+            lastJobTime = currentTime - ONE_DAY_IN_MILLIS;
         }
 
         // Store the current time that the Job is running
-        sharedPref.edit().putString(DebugActivity.DEBUG_LAST, FULL_DATE_FORMAT.format(new Date())).apply();
-
-        List<PlantSchedule> scheduleList = Utilities.loadScheduleList(sharedPref);
-
-        int numPlants = 0;
-        for (PlantSchedule sched : scheduleList) {
-
-            sched.updateReferenceDate();
-
-            boolean alreadySet = sched.getWaterToday();
-
-            // if this is the day's first alarm and the plant should be watered today,
-            // but waterToday is false, we assume that it has been watered and do not count it
-            if (!(isToday(lastJobDate) && !alreadySet) && sched.shouldWaterToday()) {
-                sched.setWaterToday(true);
-                ++numPlants;
-            }
-        }
+        sharedPref.edit().putString(DebugActivity.DEBUG_LAST, DateCodec.formatTimestamp(currentTime)).apply();
 
         SharedPreferences defaultSharedPref = PreferenceManager.getDefaultSharedPreferences(this);
-        boolean showNotification = defaultSharedPref.getBoolean(
+        final boolean showNotification = defaultSharedPref.getBoolean(
                 this.getResources().getString(R.string.pref_notify_key), true);
 
-        if (showNotification && numPlants > 0) {
-            displayNotification(numPlants, this);
-            Utilities.saveScheduleList(sharedPref, scheduleList);
-
-            if (MainActivity.adapter != null) {
-                MainActivity.adapter.notifyDataSetChanged();
-            }
+        // A run stopped earlier today is resumed after the last PlantSchedule it evaluated, as the same run
+        final int today = PlantSchedule.today();
+        boolean lastJobWasToday = isToday(lastJobTime);
+        long resumeAfterId = PlantSchedule.NO_ID;
+        int resumedPlants = 0;
+        if (sharedPref.getInt(RESUME_DAY, NO_DAY) == today) {
+            lastJobWasToday = sharedPref.getBoolean(RESUME_LAST_JOB_WAS_TODAY, lastJobWasToday);
+            resumeAfterId = sharedPref.getLong(RESUME_AFTER_ID, PlantSchedule.NO_ID);
+            resumedPlants = sharedPref.getInt(RESUME_NUM_PLANTS, 0);
+            Log.i(TAG, "Resuming stopped job after " + resumeAfterId);
         }
+        final boolean firstRunWasToday = lastJobWasToday;
+        final long afterId = resumeAfterId;
+        final int previousPlants = resumedPlants;
+
+        // Evaluate only the PlantSchedules due today, storing the updates only if a notification is shown
+        // They are listed by the store's DueDigest, so no rows are read unless the digest is stale
+        final DueCounter dueCounter = new DueCounter(today, lastJobWasToday, showNotification);
+        final ScheduleWriter writer = ScheduleWriter.getInstance(this);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                ScheduleStore store = ScheduleStore.getInstance(NotificationJobService.this);
+                jobRun.beginStage();
+                jobRun.setScheduleCount(store.count());
+                jobRun.endStage(JobRun.STAGE_LOAD);
+                store.forEachDue(today, afterId, dueCounter, showNotification, jobRun);
+                // every change the user made up to this one was written before the PlantSchedules were read
+                final long sequence = writer.getWrittenSequence();
+
+                final int numPlants = previousPlants + dueCounter.getNumPlants();
+                final boolean stopped = jobRun.isStopped();
+                // the notification lists the first plants by name, which the evaluation did not decode
+                final ScheduleTable listed = !stopped && showNotification
+                        ? store.loadUnwatered(today, ReminderNotifier.MAX_LINES) : new ScheduleTable(0);
+                if (stopped) {
+                    // the JobScheduler runs the job again, which continues after the last evaluated PlantSchedule
+                    long lastId = dueCounter.getLastId() != PlantSchedule.NO_ID ? dueCounter.getLastId() : afterId;
+                    sharedPref.edit()
+                            .putInt(RESUME_DAY, today)
+                            .putLong(RESUME_AFTER_ID, lastId)
+                            .putBoolean(RESUME_LAST_JOB_WAS_TODAY, firstRunWasToday)
+                            .putInt(RESUME_NUM_PLANTS, numPlants)
+                            .apply();
+                    Log.i(TAG, "Stopped job after " + lastId);
+                } else {
+                    sharedPref.edit().remove(RESUME_DAY).apply();
+
+                    // rescheduling the job stops this instance of it, which has nothing left to stop
+                    if (currentRun == jobRun) {
+                        currentRun = null;
+                    }
+
+                    // Periodic jobs can't be scheduled for a specific time so this Job must reschedule itself
+                    jobRun.beginStage();
+                    Utilities.scheduleNextJob(NotificationJobService.this, sharedPref);
+                    jobRun.endStage(JobRun.STAGE_RESCHEDULE);
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ScheduleRepository.getInstance(NotificationJobService.this)
+                                .applyStored(dueCounter.getChangedList(), sequence);
+
+                        Runnable finishJob = new Runnable() {
+                            @Override
+                            public void run() {
+                                jobFinished(params, false);
+                            }
+                        };
+
+                        // the notification waits for the resumed run, which counts every plant
+                        if (!stopped) {
+                            jobRun.beginStage();
+                            // the notification is only posted again if the plants in it changed
+                            // an update within the rate limit is posted later, so the job finishes once it is
+                            if (showNotification) {
+                                ReminderNotifier.getInstance(NotificationJobService.this)
+                                        .update(numPlants, listed, finishJob);
+                                jobRun.setNotifiedCount(numPlants);
+                            }
+                            jobRun.endStage(JobRun.STAGE_NOTIFY);
+                        }
+
+                        recordRun(jobRun, stopped);
+                        if (!stopped && !showNotification) {
+                            finishJob.run();
+                        }
+                    }
+                });
+            }
+        });
 
-        // Periodic jobs can't be scheduled for a specific time so this Job must reschedule itself
-        Utilities.scheduleNextJob(this, sharedPref);
-
-        return false;
+        // the job finishes once the PlantSchedules are evaluated in the background
+        return true;
     }
 
     @Override
     public boolean onStopJob(JobParameters params) {
-        return false;
+        // the run stops at the next PlantSchedule, and the JobScheduler runs the job again to resume it
+        JobRun run = currentRun;
+        if (run != null) {
+            run.stop();
+        }
+        Log.i(TAG, "Job stopped by the system");
+        return true;
     }
 
     /*
-     * Displays a notification informing the user that plants need to be watered
-     *
-     * @param numPlants the number of plants that need to be watered
+     * Keeps the run's timings in the JobHistory, in the background
      */
-    private static void displayNotification(int numPlants, Context context) {
-
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        assert notificationManager != null;
-
-        String notificationString = numPlants + (numPlants == 1 ? " plant needs" : " plants need") + " to be watered";
-
-        NotificationCompat.Builder builder;
-
-        // Only use the NotificationCompat.Builder ctor with NotificationChannels if
-        //  Android Version >= O and it is necessary
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder = new NotificationCompat.Builder(context, Utilities.NOTIFICATION_CHANNEL_ID)
-                    .setAutoCancel(true)
-                    .setSmallIcon(R.drawable.wateringcan_notification2)
-                    .setContentTitle("Watering Can")
-                    .setContentText(notificationString);
-        } else {
-            builder = new NotificationCompat.Builder(context)
-                    .setAutoCancel(true)
-                    .setSmallIcon(R.drawable.wateringcan_notification2)
-                    .setContentTitle("Watering Can")
-                    .setContentText(notificationString);
-        }
-
-
-        Intent intent = new Intent(context, MainActivity.class);
-
-        // build a fake stack so the back button will work properly
-        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-        stackBuilder.addParentStack(MainActivity.class);
-        stackBuilder.addNextIntent(intent);
-        PendingIntent pendingIntent = stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
-        builder.setContentIntent(pendingIntent);
-
-        notificationManager.notify(0, builder.build());
-        Log.i(TAG, "Displayed notification");
+    private void recordRun(final JobRun run, final boolean stopped) {
+        final JobHistory history = JobHistory.getInstance(this);
+        ScheduleWriter.getInstance(this).execute(new Runnable() {
+            @Override
+            public void run() {
+                history.append(run, stopped);
+            }
+        });
     }
 
-
     /**
-     * Determines whether or not a given Date is today
+     * Determines whether or not a given time is today
      *
-     * @param date The Date to check
-     * @return whether or not the Date is today
+     * @param time The time to check, in milliseconds since the epoch
+     * @return whether or not the time is today
      */
-    private static boolean isToday(Date date){
-        Calendar today = Calendar.getInstance();
-        Calendar specifiedDate  = Calendar.getInstance();
-        specifiedDate.setTime(date);
-
-        return today.get(Calendar.DAY_OF_MONTH) == specifiedDate.get(Calendar.DAY_OF_MONTH)
-                &&  today.get(Calendar.MONTH) == specifiedDate.get(Calendar.MONTH)
-                &&  today.get(Calendar.YEAR) == specifiedDate.get(Calendar.YEAR);
+    private static boolean isToday(long time) {
+        return DateCodec.toLocalDay(time) == DateCodec.toLocalDay(Clock.getInstance().currentTimeMillis());
     }
 
 
@@ -1,132 +1,246 @@
 package com.coconut.young.wateringcan;
 
-import android.util.Log;
+import com.coconut.young.wateringcan.utils.Clock;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.Locale;
 
 /**
  *  Holds the information needed to determine when a plant needs to be watered
  */
 public class PlantSchedule {
 
-    private static final String TAG = MainActivity.TAG + "." + PlantSchedule.class.getSimpleName();
+    public static final long NO_ID = -1;
 
+    private long id = NO_ID;
     private String name;
-    private Date refDate = new Date();
+    private int refDay;
     private int waterInterval;
     private boolean waterToday = false;
+    // whether this schedule has changes that have not been written to persistent storage
+    private boolean dirty = true;
 
-    public static final DateFormat DATE_FORMAT = new SimpleDateFormat("MM/dd/yy", Locale.getDefault());
     /*Package-Private*/ static final int ONE_DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // the app considers 6 am the start of the day
+    private static final int START_OF_DAY_IN_MILLIS = 1000 * 60 * 60 * 6;
+
+    /*
+     * Constructor for views over PlantSchedules held elsewhere, which override every getter and setter
+     */
+    /*Package-Private*/ PlantSchedule() {
+    }
 
     /*
      * Constructor to build a plant schedule, evaluates and sets waterToday
      *
      * @param name the plant's display name
-     * @param refDate the date used to calculate when to water
+     * @param refTime the time used to calculate when to water, in milliseconds since the epoch
      * @param waterInterval how often to water the plant, in days
      */
-    /*Package-Private*/ PlantSchedule(String name, Date refDate, int waterInterval) {
+    /*Package-Private*/ PlantSchedule(String name, long refTime, int waterInterval) {
+        long currentTime = Clock.getInstance().currentTimeMillis();
+        int today = dayOf(currentTime);
         this.name = name;
-        // Ensure that the reference date is before the current date
-        long currentTime = Calendar.getInstance().getTimeInMillis();
-        while (currentTime < refDate.getTime()) {
-            refDate.setTime(refDate.getTime() - waterInterval * ONE_DAY_IN_MILLIS);
-        }
-        // Set the clock of the reference date to 6 am, which the app considers the start of the day
-        this.refDate.setTime(refDate.getTime() - (refDate.getTime() % ONE_DAY_IN_MILLIS) + 1000 * 60 * 60 * 6);
         this.waterInterval = waterInterval;
-        updateReferenceDate();
 
-        this.waterToday = shouldWaterToday();
+        // Ensure that the reference date is before the current time, by whole intervals
+        if (refTime > currentTime) {
+            long intervalInMillis = (long) waterInterval * ONE_DAY_IN_MILLIS;
+            refTime -= ((refTime - currentTime + intervalInMillis - 1) / intervalInMillis) * intervalInMillis;
+        }
+        this.refDay = (int) floorDiv(refTime, ONE_DAY_IN_MILLIS);
+        updateReferenceDate(today);
+
+        this.waterToday = shouldWaterToday(today);
     }
 
     /*
-     * Constructor to build a plant schedule from a JSONObject
-     * used to load stored PlantSchedules from persistent storage
+     * Constructor to build a plant schedule from a stored record, the reference date is not re-evaluated
      *
-     * @param json must hold the keys: `name`,`interval`,`water`,`date`
-     */
-    public PlantSchedule(JSONObject json) {
-        try {
-            this.name = json.getString("name");
-            this.waterInterval = json.getInt("interval");
-            this.waterToday = json.getBoolean("water");
-
-            Date tempRef = DATE_FORMAT.parse(json.getString("date"));
-            this.refDate.setTime(tempRef.getTime() - (tempRef.getTime() % ONE_DAY_IN_MILLIS) + 1000 * 60 * 60 * 6);
-        } catch (JSONException e) {
-            Log.e(TAG, "Exception building PlantSchedule from JSON");
-        } catch (ParseException e) {
-            Log.e(TAG, "Exception parsing PlantSchedule.refDate from JSON");
-        }
+     * @param id the record's id in persistent storage
+     * @param name the plant's display name
+     * @param refDay the reference date, in days since the epoch
+     * @param waterInterval how often to water the plant, in days
+     * @param waterToday whether the plant is marked as needing water
+     */
+    public PlantSchedule(long id, String name, int refDay, int waterInterval, boolean waterToday) {
+        this.id = id;
+        this.name = name;
+        this.refDay = refDay;
+        this.waterInterval = waterInterval;
+        this.waterToday = waterToday;
+        this.dirty = false;
     }
 
     // the string is formatted to display to the user on the MainActivity
     // it is in format: Water <name> <today|in # day(s)>, and every <# day(s)>
     public String toString() {
-        String instruction = "Water " + name + " ";
-        if (shouldWaterToday()) {
-            instruction += "today";
-        } else if (getDaysToWater() == 1) {
-            instruction += "in " + getDaysToWater() + " day";
+        return toString(today());
+    }
+
+    /**
+     * @param today the current day, from today()
+     * @return the string displayed to the user for this PlantSchedule on the given day
+     */
+    public String toString(int today) {
+        int waterInterval = getWaterInterval();
+        int daysToWater = getDaysToWater(today);
+
+        StringBuilder instruction = new StringBuilder(64).append("Water ").append(getName());
+        if (daysToWater == waterInterval) {
+            instruction.append(" today");
+        } else if (daysToWater == 1) {
+            instruction.append(" in 1 day");
         } else {
-            instruction += "in " + getDaysToWater() + " days";
+            instruction.append(" in ").append(daysToWater).append(" days");
         }
         if (waterInterval == 1) {
-            instruction += ", and every 1 day";
+            instruction.append(", and every 1 day");
         } else {
-            instruction += ", and every " + waterInterval + " days";
+            instruction.append(", and every ").append(waterInterval).append(" days");
         }
 
-        return instruction;
+        return instruction.toString();
     }
 
     public boolean shouldWaterToday() {
-        int days = getDaysToWater();
-        return days >= 0 && days % waterInterval == 0;
+        return shouldWaterToday(today());
     }
 
-    private int getDaysToWater() {
-        return waterInterval - (getDaysAfterReferenceDate() % waterInterval);
+    /**
+     * @param today the current day, from today()
+     * @return whether the plant should be watered on the given day
+     */
+    public boolean shouldWaterToday(int today) {
+        return isWateringDay(getRefDay(), getWaterInterval(), today);
+    }
+
+    /**
+     * @param today the current day, from today()
+     * @return the number of days until the plant should be watered, or the interval if it is today
+     */
+    public int getDaysToWater(int today) {
+        return getWaterInterval() - (daysSinceReference(getRefDay(), today) % getWaterInterval());
+    }
+
+    /**
+     * @param today the current day, from today()
+     * @return the next day the plant should be watered, which is today if it should be watered today
+     */
+    public int getNextWateringDay(int today) {
+        int daysToWater = getDaysToWater(today);
+        return daysToWater == getWaterInterval() ? today : today + daysToWater;
     }
 
     /**
      * Update the reference date to the most recent watering day
      */
     public void updateReferenceDate() {
-        int days = getDaysAfterReferenceDate();
-        Calendar c = Calendar.getInstance();
-        c.setTime(refDate);
-        c.add(Calendar.DATE, (days / waterInterval) * waterInterval);
-        Log.d(TAG, String.format("Updating reference date from %s to %s",
-                DATE_FORMAT.format(refDate), DATE_FORMAT.format(c.getTime())));
-        refDate = c.getTime();
+        updateReferenceDate(today());
     }
 
-    private int getDaysAfterReferenceDate() {
-        long timeDiff = Calendar.getInstance().getTimeInMillis() - refDate.getTime();
-        return (int) (timeDiff / ONE_DAY_IN_MILLIS);
+    /**
+     * Update the reference date to the most recent watering day, as of the given day
+     *
+     * @param today the current day, from today()
+     */
+    public void updateReferenceDate(int today) {
+        setRefDay(mostRecentWateringDay(getRefDay(), getWaterInterval(), today));
+    }
+
+    /*
+     * Scheduling math on days since the epoch, usable directly on stored columns
+     */
+
+    /**
+     * @return the current day, in days since the epoch, where each day starts at 6 am
+     */
+    public static int today() {
+        return dayOf(Clock.getInstance().currentTimeMillis());
+    }
+
+    /**
+     * @param millis a time, in milliseconds since the epoch
+     * @return the day containing the time, in days since the epoch, where each day starts at 6 am
+     */
+    public static int dayOf(long millis) {
+        return (int) floorDiv(millis - START_OF_DAY_IN_MILLIS, ONE_DAY_IN_MILLIS);
+    }
+
+    /**
+     * @param day a day, in days since the epoch
+     * @return the time the day starts, in milliseconds since the epoch
+     */
+    public static long getStartOfDay(int day) {
+        return (long) day * ONE_DAY_IN_MILLIS + START_OF_DAY_IN_MILLIS;
+    }
+
+    /**
+     * @return whether a schedule with the reference day and interval is watered on the given day
+     */
+    public static boolean isWateringDay(int refDay, int waterInterval, int day) {
+        return daysSinceReference(refDay, day) % waterInterval == 0;
+    }
+
+    /**
+     * @return the most recent day, as of the given day, that a schedule with the
+     *          reference day and interval is watered
+     */
+    public static int mostRecentWateringDay(int refDay, int waterInterval, int day) {
+        return refDay + (daysSinceReference(refDay, day) / waterInterval) * waterInterval;
+    }
+
+    /*
+     * The number of whole days from the start of the reference day to the given day
+     * A reference day that has not started yet, such as today's date entered before 6 am,
+     * counts as already started
+     */
+    private static int daysSinceReference(int refDay, int day) {
+        return refDay > day ? day - refDay + 1 : day - refDay;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            --quotient;
+        }
+        return quotient;
     }
 
     /*
      * Setters and Getters
      */
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
 
+    /**
+     * @return the reference date, at the start of its day
+     */
     public Date getRefDate() {
-        return refDate;
+        return new Date(getStartOfDay(getRefDay()));
+    }
+
+    /**
+     * @return the reference date, in days since the epoch
+     */
+    public int getRefDay() {
+        return refDay;
+    }
+
+    /*Package-Private*/ void setRefDay(int refDay) {
+        if (this.refDay != refDay) {
+            dirty = true;
+        }
+        this.refDay = refDay;
     }
 
     public int getWaterInterval() {
@@ -134,10 +248,21 @@ public class PlantSchedule {
     }
 
     public void setWaterToday(boolean waterToday) {
+        if (this.waterToday != waterToday) {
+            dirty = true;
+        }
         this.waterToday = waterToday;
     }
 
     public boolean getWaterToday() {
         return waterToday;
     }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markClean() {
+        dirty = false;
+    }
 }
@@ -1,65 +1,202 @@
 package com.coconut.young.wateringcan;
 
 import android.content.Context;
+import android.os.Handler;
 import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import java.util.List;
+import com.coconut.young.wateringcan.storage.ScheduleSource;
 
 /**
  * This custom Adapter is used to build list entries representing a PlantSchedule
  * Each view contains an icon indicating plantSchedule.waterToday and plantSchedule.toString()
+ *
+ * The adapter reads the rows straight from a ScheduleSource, either the ScheduleRepository or a
+ * ScheduleSearch, which reports exactly which rows change so only those are rebound. A row whose page
+ * is not loaded yet is shown empty, and is rebound once it is. When the source's order is grouped, the
+ * first row of each group also shows the group's header. Each row's text and icon are rendered once a day,
+ * by the ScheduleRenderCache, and every row is rebound when the day changes.
  */
-public class PlantScheduleAdapter extends ArrayAdapter<PlantSchedule> {
-    /*Package-Private*/ PlantScheduleAdapter(Context context, List<PlantSchedule> list) {
-        super(context, android.R.layout.simple_list_item_1, list);
+public class PlantScheduleAdapter extends RecyclerView.Adapter<PlantScheduleAdapter.ViewHolder> {
+
+    /**
+     * Receives clicks on a list entry
+     */
+    public interface OnScheduleClickListener {
+        /**
+         * @param sched a view of the clicked PlantSchedule, only valid until the next change
+         * @param position its position in the ScheduleSource
+         */
+        void onScheduleClick(PlantSchedule sched, int position);
+    }
+
+    private final Context context;
+    private ScheduleSource source;
+    private final OnScheduleClickListener clickListener;
+
+    private final ScheduleRenderCache renderCache = new ScheduleRenderCache();
+    private final Handler handler = new Handler();
+    private final Runnable dayChangeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            checkDay();
+            scheduleDayChange();
+        }
+    };
+
+    /*Package-Private*/ PlantScheduleAdapter(Context context, ScheduleSource source,
+                                             OnScheduleClickListener clickListener) {
+        this.context = context;
+        this.source = source;
+        this.clickListener = clickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the rows of another ScheduleSource
+     */
+    public void setSource(ScheduleSource newSource) {
+        if (newSource != source) {
+            source = newSource;
+            notifyDataSetChanged();
+        }
+    }
+
+    public ScheduleSource getSource() {
+        return source;
+    }
+
+    /**
+     * Rebind every row if the day has changed since they were rendered
+     * Rows are rebound at the start of each day while the list is shown, but the device may have slept through it
+     */
+    public void checkDay() {
+        if (renderCache.checkDay()) {
+            notifyItemRangeChanged(0, getItemCount());
+        }
+    }
+
+    private void scheduleDayChange() {
+        handler.removeCallbacks(dayChangeRunnable);
+        handler.postDelayed(dayChangeRunnable, renderCache.getMillisUntilNextDay());
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        scheduleDayChange();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        handler.removeCallbacks(dayChangeRunnable);
+    }
+
+    @Override
+    public int getItemCount() {
+        return source.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        PlantSchedule sched = source.get(position);
+        // a row that is not loaded yet gets an id no PlantSchedule has, unique to its position
+        return sched != null ? sched.getId() : PlantSchedule.NO_ID - 1 - position;
     }
 
     @NonNull
     @Override
-    public View getView(int position, View convertView, @NonNull ViewGroup parent) {
-        View view = convertView;
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.schedule_list_item, parent, false);
+        return new ViewHolder(view);
+    }
 
-        if (view == null) {
-            LayoutInflater inflater;
-            inflater = LayoutInflater.from(getContext());
-            view = inflater.inflate(R.layout.schedule_list_item, new LinearLayout(getContext()));
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        PlantSchedule sched = source.get(position);
+        if (sched == null) {
+            // the repository is loading the row, and rebinds it once it is
+            holder.groupView.setVisibility(View.GONE);
+            holder.iconView.setImageDrawable(null);
+            holder.textView.setText(null);
+            return;
         }
+        ScheduleRenderCache.Entry entry = renderCache.get(sched);
+        bindGroup(holder, sched, position);
 
-        final PlantSchedule sched = getItem(position);
-        assert sched != null;
-
-        // set the icon
-        final ImageView imageView = view.findViewById(R.id.schedule_icon);
-        setIcon(sched, imageView);
-        // the user can toggle the boolean to indicate that they've watered the plant
-        imageView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                sched.setWaterToday(!sched.getWaterToday());
-                setIcon(sched, imageView);
-            }
-        });
-
-        // set the text
-        TextView textView = view.findViewById(R.id.schedule_text);
-        textView.setText(sched.toString());
-
-        return view;
+        holder.waterToday = sched.getWaterToday();
+        // the icon shows if the plant should be watered
+        holder.iconView.setImageResource(entry.iconRes);
+        holder.textView.setText(entry.text);
     }
 
-    // replaces the image of an ImageView with an icon showing if the plant should be watered
-    private void setIcon(PlantSchedule sched, ImageView imageView) {
-        if (sched.getWaterToday()) {
-            imageView.setImageResource(R.drawable.wateringcan_active2);
+    /*
+     * Shows the group's header above the row if the row starts a group
+     * Each page is loaded separately, so the header is left off until the row before is loaded
+     */
+    private void bindGroup(ViewHolder holder, PlantSchedule sched, int position) {
+        int order = source.getOrder();
+        if (!ScheduleGroups.isGrouped(order)) {
+            holder.groupView.setVisibility(View.GONE);
+            return;
+        }
+
+        int day = renderCache.getDay();
+        int group = ScheduleGroups.groupOf(order, sched, day);
+        PlantSchedule previous = position > 0 ? source.get(position - 1) : null;
+        if (position == 0 || (previous != null && ScheduleGroups.groupOf(order, previous, day) != group)) {
+            holder.groupView.setText(ScheduleGroups.getLabel(context, order, group));
+            holder.groupView.setVisibility(View.VISIBLE);
         } else {
-            imageView.setImageResource(R.drawable.wateringcan2);
+            holder.groupView.setVisibility(View.GONE);
+        }
+    }
+
+    /*
+     * Holds a list entry's views, and the listeners that act on whichever PlantSchedule it is bound to
+     */
+    /*Package-Private*/ class ViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView groupView;
+        private final ImageView iconView;
+        private final TextView textView;
+        // the bound PlantSchedule's waterToday
+        private boolean waterToday;
+
+        /*Package-Private*/ ViewHolder(View view) {
+            super(view);
+            groupView = view.findViewById(R.id.schedule_group);
+            iconView = view.findViewById(R.id.schedule_icon);
+            textView = view.findViewById(R.id.schedule_text);
+
+            // the user can toggle the boolean to indicate that they've watered the plant
+            iconView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    // the shown position may be behind the source's while a change is compared
+                    int position = source.indexOf(getItemId());
+                    if (position >= 0) {
+                        // the source saves the change, and this row is rebound with it
+                        source.setWaterToday(position, !waterToday);
+                    }
+                }
+            });
+
+            view.findViewById(R.id.schedule_row).setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    int position = source.indexOf(getItemId());
+                    if (position >= 0) {
+                        clickListener.onScheduleClick(source.get(position), position);
+                    }
+                }
+            });
         }
     }
 
@@ -0,0 +1,231 @@
+package com.coconut.young.wateringcan;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.TaskStackBuilder;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.utils.Utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.coconut.young.wateringcan.MainActivity.SHARED_PREFERENCES_NAME;
+
+/**
+ * Shows the notification that plants need to be watered, listing the first few of them by name
+ * Its actions mark every plant, or one of the first plants, as watered through the WateringActionReceiver
+ *
+ * The content last posted is kept, and the notification is only posted again when its content changes
+ * or it is no longer showing, so an unchanged count does not call the NotificationManager or alert the
+ * user again. Updates closer together than MIN_UPDATE_INTERVAL_IN_MILLIS are coalesced, only the latest
+ * one is posted once the interval has passed. A caller that must stay alive until then, such as a job,
+ * is told when its update has been posted.
+ *
+ * It is only used on the main thread.
+ */
+/*Package-Private*/ class ReminderNotifier {
+
+    private static final String TAG = MainActivity.TAG + "." + ReminderNotifier.class.getSimpleName();
+
+    /*Package-Private*/ static final int NOTIFICATION_ID = 0;
+    // the most plants listed in the notification
+    /*Package-Private*/ static final int MAX_LINES = 5;
+    // the most plants with their own action, after the action for every plant
+    private static final int MAX_PLANT_ACTIONS = 2;
+
+    // the content of the last posted notification, or "" if it was removed
+    private static final String POSTED_CONTENT = "notificationContent";
+    // the system drops updates to an app's notifications that come faster than a few a second
+    private static final long MIN_UPDATE_INTERVAL_IN_MILLIS = 1000;
+
+    private static ReminderNotifier instance;
+
+    private final Context context;
+    private final NotificationManager notificationManager;
+    private final SharedPreferences sharedPref;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // when the NotificationManager was last called, in SystemClock.uptimeMillis()
+    private long lastUpdateTime = -MIN_UPDATE_INTERVAL_IN_MILLIS;
+    // the latest update, posted once the interval has passed
+    private boolean pending = false;
+    private int pendingCount;
+    private ScheduleTable pendingListed;
+    // run once the pending update has been posted
+    private final List<Runnable> postedCallbacks = new ArrayList<>();
+    private final Runnable postPending = new Runnable() {
+        @Override
+        public void run() {
+            pending = false;
+            post(pendingCount, pendingListed);
+            runPostedCallbacks();
+        }
+    };
+
+    private ReminderNotifier(Context context) {
+        this.context = context;
+        this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.sharedPref = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /*Package-Private*/ static synchronized ReminderNotifier getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReminderNotifier(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Show that plants need to be watered, or remove the notification if none do
+     *
+     * @param numPlants the number of plants that need to be watered
+     * @param listed the first of them, with their names, at most MAX_LINES are listed
+     * @param onPosted run on the main thread once this update, or a later one coalesced with it,
+     *                 has been posted, which may be before update returns
+     */
+    /*Package-Private*/ void update(int numPlants, ScheduleTable listed, Runnable onPosted) {
+        pendingCount = numPlants;
+        pendingListed = listed;
+        postedCallbacks.add(onPosted);
+        if (pending) {
+            // the update already waiting posts this content instead
+            Log.i(TAG, "Coalesced notification update");
+            return;
+        }
+
+        long wait = lastUpdateTime + MIN_UPDATE_INTERVAL_IN_MILLIS - SystemClock.uptimeMillis();
+        if (wait > 0) {
+            pending = true;
+            mainHandler.postDelayed(postPending, wait);
+        } else {
+            post(numPlants, listed);
+            runPostedCallbacks();
+        }
+    }
+
+    /**
+     * update, posted at once instead of coalesced, for a caller that may not outlive a delay
+     * such as a BroadcastReceiver. A coalesced update still waiting is replaced by this one.
+     */
+    /*Package-Private*/ void updateNow(int numPlants, ScheduleTable listed) {
+        if (pending) {
+            mainHandler.removeCallbacks(postPending);
+            pending = false;
+        }
+        post(numPlants, listed);
+        runPostedCallbacks();
+    }
+
+    private void runPostedCallbacks() {
+        List<Runnable> callbacks = new ArrayList<>(postedCallbacks);
+        postedCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    private void post(int numPlants, ScheduleTable listed) {
+        String content = contentOf(numPlants, listed);
+        String postedContent = sharedPref.getString(POSTED_CONTENT, "");
+
+        if (content.equals(postedContent) && (numPlants == 0 || isShowing())) {
+            Log.i(TAG, "Notification unchanged");
+            return;
+        }
+
+        if (numPlants == 0) {
+            notificationManager.cancel(NOTIFICATION_ID);
+            Log.i(TAG, "Removed notification");
+        } else {
+            notificationManager.notify(NOTIFICATION_ID, build(numPlants, listed));
+            Log.i(TAG, "Displayed notification");
+        }
+        lastUpdateTime = SystemClock.uptimeMillis();
+        sharedPref.edit().putString(POSTED_CONTENT, content).apply();
+    }
+
+    /*
+     * Whether the notification is still showing, the user may have dismissed it
+     */
+    private boolean isShowing() {
+        for (StatusBarNotification notification : notificationManager.getActiveNotifications()) {
+            if (notification.getId() == NOTIFICATION_ID && notification.getTag() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Notification build(int numPlants, ScheduleTable listed) {
+        String notificationString = numPlants + (numPlants == 1 ? " plant needs" : " plants need") + " to be watered";
+
+        NotificationCompat.Builder builder;
+
+        // Only use the NotificationCompat.Builder ctor with NotificationChannels if
+        //  Android Version >= O and it is necessary
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder = new NotificationCompat.Builder(context, Utilities.NOTIFICATION_CHANNEL_ID);
+        } else {
+            builder = new NotificationCompat.Builder(context);
+        }
+        builder.setAutoCancel(true)
+                .setSmallIcon(R.drawable.wateringcan_notification2)
+                .setContentTitle("Watering Can")
+                .setContentText(notificationString)
+                .setNumber(numPlants)
+                // an update to the count replaces the notification without alerting again
+                .setOnlyAlertOnce(true);
+
+        // the expanded notification lists the first plants, and counts the rest
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(notificationString);
+        int lines = Math.min(listed.size(), MAX_LINES);
+        for (int i = 0; i < lines; ++i) {
+            style.addLine(listed.getName(i));
+        }
+        if (numPlants > lines) {
+            style.setSummaryText("+" + (numPlants - lines) + " more");
+        }
+        builder.setStyle(style);
+
+        // the plants are marked in the background, without opening the app
+        builder.addAction(R.drawable.wateringcan2, "Mark all watered",
+                WateringActionReceiver.getPendingIntent(context, PlantSchedule.NO_ID, 0));
+        for (int i = 0; i < Math.min(lines, MAX_PLANT_ACTIONS); ++i) {
+            builder.addAction(R.drawable.wateringcan2, "Watered " + listed.getName(i),
+                    WateringActionReceiver.getPendingIntent(context, listed.getId(i), i + 1));
+        }
+
+        Intent intent = new Intent(context, MainActivity.class);
+
+        // build a fake stack so the back button will work properly
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addParentStack(MainActivity.class);
+        stackBuilder.addNextIntent(intent);
+        PendingIntent pendingIntent = stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+        builder.setContentIntent(pendingIntent);
+        return builder.build();
+    }
+
+    private static String contentOf(int numPlants, ScheduleTable listed) {
+        if (numPlants == 0) {
+            return "";
+        }
+        StringBuilder content = new StringBuilder().append(numPlants);
+        for (int i = 0; i < Math.min(listed.size(), MAX_LINES); ++i) {
+            content.append('\n').append(listed.getId(i)).append(' ').append(listed.getName(i));
+        }
+        return content.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.coconut.young.wateringcan;
+
+import android.content.Context;
+
+import com.coconut.young.wateringcan.storage.ScheduleStore;
+
+/**
+ * The groups the list is divided into when it is ordered by next watering day or by interval
+ * Each group is a run of rows, so a row starts a group when the row before it is in another one
+ */
+/*Package-Private*/ class ScheduleGroups {
+
+    private static final int GROUP_TODAY = 0;
+    private static final int GROUP_TOMORROW = 1;
+    private static final int GROUP_THIS_WEEK = 2;
+    private static final int GROUP_LATER = 3;
+
+    private static final int DAYS_IN_WEEK = 7;
+
+    /**
+     * @param order one of the ScheduleStore orders
+     * @return whether the list is divided into groups in that order
+     */
+    /*Package-Private*/ static boolean isGrouped(int order) {
+        return order == ScheduleStore.ORDER_NEXT_DUE || order == ScheduleStore.ORDER_INTERVAL;
+    }
+
+    /**
+     * @param order a grouped order
+     * @param sched a PlantSchedule in the list
+     * @param day the current day, from PlantSchedule.today()
+     * @return the PlantSchedule's group
+     */
+    /*Package-Private*/ static int groupOf(int order, PlantSchedule sched, int day) {
+        if (order == ScheduleStore.ORDER_INTERVAL) {
+            return sched.getWaterInterval();
+        }
+
+        int daysUntilDue = sched.getNextWateringDay(day) - day;
+        if (daysUntilDue == 0) {
+            return GROUP_TODAY;
+        } else if (daysUntilDue == 1) {
+            return GROUP_TOMORROW;
+        } else if (daysUntilDue < DAYS_IN_WEEK) {
+            return GROUP_THIS_WEEK;
+        }
+        return GROUP_LATER;
+    }
+
+    /**
+     * @param context a Context to read the labels from
+     * @param order a grouped order
+     * @param group a group from groupOf
+     * @return the header shown above the group
+     */
+    /*Package-Private*/ static String getLabel(Context context, int order, int group) {
+        if (order == ScheduleStore.ORDER_INTERVAL) {
+            return group == 1 ? context.getString(R.string.group_every_day)
+                    : context.getString(R.string.group_every_days, group);
+        }
+
+        switch (group) {
+            case GROUP_TODAY:
+                return context.getString(R.string.group_today);
+            case GROUP_TOMORROW:
+                return context.getString(R.string.group_tomorrow);
+            case GROUP_THIS_WEEK:
+                return context.getString(R.string.group_this_week);
+            default:
+                return context.getString(R.string.group_later);
+        }
+    }
+}
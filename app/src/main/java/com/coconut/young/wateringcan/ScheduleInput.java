@@ -0,0 +1,59 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.utils.DateCodec;
+
+import java.text.ParseException;
+
+/**
+ * The rules for the fields a PlantSchedule is entered with, shared by the EditActivity and imports
+ *
+ *   name:     any text
+ *   date:     when the plant was last watered, "MM/dd/yy"
+ *   interval: how often to water the plant, a positive number of days
+ */
+public class ScheduleInput {
+
+    /**
+     * Build a PlantSchedule from its entered fields, the same way as one added in the EditActivity
+     *
+     * @param name the plant's name
+     * @param date when the plant was last watered
+     * @param interval how often to water the plant
+     * @return the new PlantSchedule, without an id
+     * @throws ParseException if a field breaks its rule, with a message to show the user
+     */
+    public static PlantSchedule parse(String name, String date, String interval) throws ParseException {
+        if (name == null) {
+            throw new ParseException("Please enter a name", 0);
+        }
+        int waterInterval = parseInterval(interval);
+
+        long refTime;
+        try {
+            refTime = DateCodec.parseDayStart(date == null ? "" : date.trim());
+        } catch (ParseException e) {
+            throw new ParseException("Please enter a date as MM/DD/YY", e.getErrorOffset());
+        }
+        return new PlantSchedule(name, refTime, waterInterval);
+    }
+
+    /**
+     * @param interval how often to water the plant
+     * @return the interval, in days
+     * @throws ParseException if the interval is not a positive number of days
+     */
+    public static int parseInterval(String interval) throws ParseException {
+        int waterInterval = 0;
+        if (interval != null) {
+            try {
+                waterInterval = Integer.parseInt(interval.trim());
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        if (waterInterval <= 0) {
+            throw new ParseException("Please enter a positive number of days", 0);
+        }
+        return waterInterval;
+    }
+}
@@ -0,0 +1,96 @@
+package com.coconut.young.wateringcan;
+
+import android.util.LruCache;
+
+import com.coconut.young.wateringcan.utils.Clock;
+
+/**
+ * Caches the text and icon shown for each PlantSchedule in the list, so binding a row is a lookup
+ *
+ * The text only changes when the day does or the PlantSchedule is edited. Every entry is dropped when
+ * checkDay finds the day has changed, and an entry is only used while the PlantSchedule still has the
+ * values it was rendered from, so an edit misses the cache.
+ *
+ * Only the entries of the most recently bound PlantSchedules are kept, about as many as the
+ * ScheduleRepository keeps loaded, so the cache does not grow with every row scrolled past.
+ */
+/*Package-Private*/ class ScheduleRenderCache {
+
+    /*
+     * The rendered text and icon of a PlantSchedule
+     */
+    /*Package-Private*/ static class Entry {
+        // the values the entry was rendered from
+        private final String name;
+        private final int refDay;
+        private final int waterInterval;
+        private final boolean waterToday;
+
+        /*Package-Private*/ final String text;
+        /*Package-Private*/ final int iconRes;
+
+        private Entry(PlantSchedule sched, String text, int iconRes) {
+            this.name = sched.getName();
+            this.refDay = sched.getRefDay();
+            this.waterInterval = sched.getWaterInterval();
+            this.waterToday = sched.getWaterToday();
+            this.text = text;
+            this.iconRes = iconRes;
+        }
+
+        private boolean matches(PlantSchedule sched) {
+            return refDay == sched.getRefDay() && waterInterval == sched.getWaterInterval()
+                    && waterToday == sched.getWaterToday() && name.equals(sched.getName());
+        }
+    }
+
+    // a little more than the rows the ScheduleRepository keeps loaded around the visible ones
+    private static final int MAX_ENTRIES = 500;
+
+    private final LruCache<Long, Entry> entries = new LruCache<>(MAX_ENTRIES);
+    // the day the entries were rendered for
+    private int day = PlantSchedule.today();
+
+    /**
+     * @param sched a PlantSchedule shown in the list
+     * @return the PlantSchedule's text and icon, as of the day the entries are rendered for
+     */
+    /*Package-Private*/ Entry get(PlantSchedule sched) {
+        Entry entry = entries.get(sched.getId());
+        if (entry == null || !entry.matches(sched)) {
+            int iconRes = sched.getWaterToday() ? R.drawable.wateringcan_active2 : R.drawable.wateringcan2;
+            entry = new Entry(sched, sched.toString(day), iconRes);
+            entries.put(sched.getId(), entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Drop every entry if the day has changed since they were rendered
+     *
+     * @return whether the entries were dropped
+     */
+    /*Package-Private*/ boolean checkDay() {
+        int today = PlantSchedule.today();
+        if (today == day) {
+            return false;
+        }
+        entries.evictAll();
+        day = today;
+        return true;
+    }
+
+    /**
+     * @return the day the entries are rendered for
+     */
+    /*Package-Private*/ int getDay() {
+        return day;
+    }
+
+    /**
+     * @return how long until the next day starts, when every entry is out of date
+     */
+    /*Package-Private*/ long getMillisUntilNextDay() {
+        return Math.max(PlantSchedule.getStartOfDay(day + 1) - Clock.getInstance().currentTimeMillis(), 0);
+    }
+}
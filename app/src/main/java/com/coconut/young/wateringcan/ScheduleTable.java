@@ -0,0 +1,301 @@
+package com.coconut.young.wateringcan;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds every PlantSchedule as columns of primitives instead of one object per PlantSchedule
+ * Names are interned, so PlantSchedules with the same name share one String
+ *
+ * get() returns a lightweight view of a row, which reads and writes the columns directly.
+ * A view is only valid until a row before it is removed.
+ */
+public class ScheduleTable extends AbstractList<PlantSchedule> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size = 0;
+    private long[] ids;
+    private int[] nameRefs;
+    private int[] refDays;
+    private int[] intervals;
+    private final BitSet waterToday = new BitSet();
+    // rows with changes that have not been written to persistent storage
+    private final BitSet dirty = new BitSet();
+
+    private final List<String> namePool = new ArrayList<>();
+    private final Map<String, Integer> nameRefsByName = new HashMap<>();
+
+    public ScheduleTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ScheduleTable(int capacity) {
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        ids = new long[capacity];
+        nameRefs = new int[capacity];
+        refDays = new int[capacity];
+        intervals = new int[capacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PlantSchedule get(int index) {
+        checkIndex(index);
+        return new Row(index);
+    }
+
+    /**
+     * Append a copy of a PlantSchedule
+     */
+    @Override
+    public boolean add(PlantSchedule sched) {
+        add(sched.getId(), sched.getName(), sched.getRefDay(), sched.getWaterInterval(), sched.getWaterToday());
+        dirty.set(size - 1, sched.isDirty());
+        return true;
+    }
+
+    /**
+     * Append a stored PlantSchedule without creating a PlantSchedule
+     */
+    public void add(long id, String name, int refDay, int waterInterval, boolean water) {
+        ensureCapacity(size + 1);
+        ++modCount;
+
+        ids[size] = id;
+        nameRefs[size] = intern(name);
+        refDays[size] = refDay;
+        intervals[size] = waterInterval;
+        waterToday.set(size, water);
+        dirty.clear(size);
+        ++size;
+    }
+
+    /**
+     * Replace a row with a copy of a PlantSchedule
+     *
+     * @return a detached copy of the replaced row
+     */
+    @Override
+    public PlantSchedule set(int index, PlantSchedule sched) {
+        checkIndex(index);
+        PlantSchedule replaced = copyOf(index);
+
+        ids[index] = sched.getId();
+        nameRefs[index] = intern(sched.getName());
+        refDays[index] = sched.getRefDay();
+        intervals[index] = sched.getWaterInterval();
+        waterToday.set(index, sched.getWaterToday());
+        dirty.set(index, sched.isDirty());
+        return replaced;
+    }
+
+    /**
+     * Remove a row
+     *
+     * @return a detached copy of the removed row
+     */
+    @Override
+    public PlantSchedule remove(int index) {
+        checkIndex(index);
+        ++modCount;
+
+        PlantSchedule removed = copyOf(index);
+
+        int moved = size - index - 1;
+        System.arraycopy(ids, index + 1, ids, index, moved);
+        System.arraycopy(nameRefs, index + 1, nameRefs, index, moved);
+        System.arraycopy(refDays, index + 1, refDays, index, moved);
+        System.arraycopy(intervals, index + 1, intervals, index, moved);
+        for (int i = index; i < size - 1; ++i) {
+            waterToday.set(i, waterToday.get(i + 1));
+            dirty.set(i, dirty.get(i + 1));
+        }
+        --size;
+        waterToday.clear(size);
+        dirty.clear(size);
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        ++modCount;
+        size = 0;
+        waterToday.clear();
+        dirty.clear();
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int newCapacity = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, newCapacity);
+            nameRefs = Arrays.copyOf(nameRefs, newCapacity);
+            refDays = Arrays.copyOf(refDays, newCapacity);
+            intervals = Arrays.copyOf(intervals, newCapacity);
+        }
+    }
+
+    /*
+     * Column accessors, for reading rows without creating a view
+     */
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public String getName(int index) {
+        return namePool.get(nameRefs[index]);
+    }
+
+    public int getRefDay(int index) {
+        return refDays[index];
+    }
+
+    public int getWaterInterval(int index) {
+        return intervals[index];
+    }
+
+    public boolean getWaterToday(int index) {
+        return waterToday.get(index);
+    }
+
+    public boolean isDirty(int index) {
+        return dirty.get(index);
+    }
+
+    /**
+     * Find a row by id, when the rows are in the order they were added so their ids ascend
+     *
+     * @param id the id to find
+     * @return the row's index, or -1 if there is no row with that id
+     */
+    public int indexOfId(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < id) {
+                low = mid + 1;
+            } else if (ids[mid] > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find a row by id when the rows are in some other order, such as by name, by checking every row
+     *
+     * @param id the id to find
+     * @return the row's index, or -1 if there is no row with that id
+     */
+    public int scanForId(long id) {
+        for (int i = 0; i < size; ++i) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private PlantSchedule copyOf(int index) {
+        return new PlantSchedule(ids[index], getName(index),
+                refDays[index], intervals[index], waterToday.get(index));
+    }
+
+    private int intern(String name) {
+        Integer ref = nameRefsByName.get(name);
+        if (ref == null) {
+            ref = namePool.size();
+            namePool.add(name);
+            nameRefsByName.put(name, ref);
+        }
+        return ref;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /*
+     * A PlantSchedule that reads and writes one row of the table
+     */
+    private class Row extends PlantSchedule {
+
+        private final int index;
+
+        /*Package-Private*/ Row(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public long getId() {
+            return ids[index];
+        }
+
+        @Override
+        public void setId(long id) {
+            ids[index] = id;
+        }
+
+        @Override
+        public String getName() {
+            return ScheduleTable.this.getName(index);
+        }
+
+        @Override
+        public int getRefDay() {
+            return refDays[index];
+        }
+
+        @Override
+        /*Package-Private*/ void setRefDay(int refDay) {
+            if (refDays[index] != refDay) {
+                dirty.set(index);
+            }
+            refDays[index] = refDay;
+        }
+
+        @Override
+        public int getWaterInterval() {
+            return intervals[index];
+        }
+
+        @Override
+        public boolean getWaterToday() {
+            return waterToday.get(index);
+        }
+
+        @Override
+        public void setWaterToday(boolean water) {
+            if (waterToday.get(index) != water) {
+                dirty.set(index);
+            }
+            waterToday.set(index, water);
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty.get(index);
+        }
+
+        @Override
+        public void markClean() {
+            dirty.clear(index);
+        }
+    }
+}
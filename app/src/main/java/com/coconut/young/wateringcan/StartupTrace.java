@@ -0,0 +1,67 @@
+package com.coconut.young.wateringcan;
+
+import android.content.SharedPreferences;
+import android.os.Trace;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.settings.DebugActivity;
+
+/**
+ * Times the phases of the MainActivity's start, so regressions in how quickly the list is shown can be measured
+ *
+ * Each phase is a Trace section, which shows in systrace, and its time is logged once the first frame is
+ * drawn and kept for the DebugActivity. Phases must begin and end on the main thread, one at a time.
+ */
+/*Package-Private*/ class StartupTrace {
+
+    private static final String TAG = MainActivity.TAG + "." + StartupTrace.class.getSimpleName();
+
+    // when onCreate started, from System.nanoTime()
+    private final long start = System.nanoTime();
+    private final StringBuilder phases = new StringBuilder();
+    private long phaseStart;
+    private String phase;
+
+    /**
+     * @param name the phase's name, as shown in systrace
+     */
+    /*Package-Private*/ void begin(String name) {
+        Trace.beginSection(name);
+        phase = name;
+        phaseStart = System.nanoTime();
+    }
+
+    /*Package-Private*/ void end() {
+        long elapsed = System.nanoTime() - phaseStart;
+        Trace.endSection();
+        append(phase, elapsed);
+    }
+
+    /**
+     * Record the time from the start until now as a phase, without a Trace section
+     * For waits that span several messages, such as the first frame, which sections cannot
+     *
+     * @param name the phase's name
+     */
+    /*Package-Private*/ void mark(String name) {
+        append(name, System.nanoTime() - start);
+    }
+
+    /**
+     * Log the phases and keep them for the DebugActivity
+     *
+     * @param sharedPref the SharedPreferences to store the startup debug info
+     */
+    /*Package-Private*/ void finish(SharedPreferences sharedPref) {
+        String summary = phases.toString();
+        Log.i(TAG, "Startup: " + summary);
+        sharedPref.edit().putString(DebugActivity.DEBUG_STARTUP, summary).apply();
+    }
+
+    private void append(String name, long elapsedNanos) {
+        if (phases.length() > 0) {
+            phases.append(", ");
+        }
+        phases.append(name).append(' ').append(elapsedNanos / 1000000).append(" ms");
+    }
+}
@@ -0,0 +1,81 @@
+package com.coconut.young.wateringcan;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.storage.ScheduleRepository;
+import com.coconut.young.wateringcan.storage.ScheduleStore;
+import com.coconut.young.wateringcan.storage.ScheduleWriter;
+
+import java.util.List;
+
+/**
+ * Receives the actions of the ReminderNotifier's notification, which mark every plant due today,
+ * or a single plant, as watered
+ *
+ * Only the waterToday of the marked PlantSchedules is written, on the ScheduleWriter's thread after any
+ * changes the user made, so the app does not have to open or load the list. The changes are applied to
+ * the ScheduleRepository in case the MainActivity is showing, and the notification is updated to the
+ * plants that still need water.
+ */
+public class WateringActionReceiver extends BroadcastReceiver {
+
+    private static final String TAG = MainActivity.TAG + "." + WateringActionReceiver.class.getSimpleName();
+
+    private static final String ACTION_WATERED = "com.coconut.young.wateringcan.action.WATERED";
+    // the id of the PlantSchedule to mark, or NO_ID to mark every due one
+    private static final String EXTRA_ID = "id";
+
+    /**
+     * @param id the PlantSchedule to mark as watered, or NO_ID to mark every one due today
+     * @param requestCode distinguishes the PendingIntent from the others shown at the same time
+     * @return the PendingIntent that marks the PlantSchedules as watered
+     */
+    /*Package-Private*/ static PendingIntent getPendingIntent(Context context, long id, int requestCode) {
+        Intent intent = new Intent(context, WateringActionReceiver.class)
+                .setAction(ACTION_WATERED)
+                .putExtra(EXTRA_ID, id);
+        return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_WATERED.equals(intent.getAction())) {
+            return;
+        }
+        final long id = intent.getLongExtra(EXTRA_ID, PlantSchedule.NO_ID);
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+
+        final ScheduleWriter writer = ScheduleWriter.getInstance(appContext);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                ScheduleStore store = ScheduleStore.getInstance(appContext);
+                int today = PlantSchedule.today();
+                final List<PlantSchedule> changedList = store.markWatered(today, id);
+                // every change the user made up to this one was written before the PlantSchedules were read
+                final long sequence = writer.getWrittenSequence();
+                final int remaining = store.countUnwatered(today);
+                final ScheduleTable listed = store.loadUnwatered(today, ReminderNotifier.MAX_LINES);
+                Log.i(TAG, "Marked " + changedList.size() + " plants as watered, " + remaining + " remaining");
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ScheduleRepository.getInstance(appContext).applyStored(changedList, sequence);
+                        // the process may be killed once the broadcast is finished, so the update is not delayed
+                        ReminderNotifier.getInstance(appContext).updateNow(remaining, listed);
+                        result.finish();
+                    }
+                });
+            }
+        });
+    }
+}
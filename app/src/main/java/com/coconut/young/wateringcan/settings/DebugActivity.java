@@ -4,14 +4,27 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.Button;
 import android.widget.TextView;
 
 import com.coconut.young.wateringcan.R;
+import com.coconut.young.wateringcan.storage.JobHistory;
+import com.coconut.young.wateringcan.storage.JobRun;
+import com.coconut.young.wateringcan.storage.ScheduleWriter;
+import com.coconut.young.wateringcan.utils.DateCodec;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 /**
- * The Activity used to view debug information on the app's alarms and version
+ * The Activity used to view debug information on the app's alarms and version,
+ * and the timings of the recent NotificationJobService runs from the JobHistory
  * This menu is hidden until the user tries to create a PlantSchedule with the name "DEBUG"
  */
 public class DebugActivity extends Activity {
@@ -19,6 +32,14 @@ public class DebugActivity extends Activity {
     public static final String DEBUG = "DEBUG";
     public static final String DEBUG_NEXT = "nextAlarm";
     public static final String DEBUG_LAST = "lastAlarm";
+    public static final String DEBUG_SKIPPED = "skippedReschedules";
+    public static final String DEBUG_STARTUP = "lastStartup";
+
+    // the number of the most recent job runs listed
+    private static final int RECENT_RUNS = 20;
+    private static final int[] PERCENTILES = { 50, 90, 99 };
+    // the labels of the JobRun stages, in stage order
+    private static final String[] STAGE_NAMES = { "load", "evaluate", "save", "notify", "reschedule" };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,6 +69,109 @@ public class DebugActivity extends Activity {
         String lastAlarmText = getString(R.string.debug_last, intent.getStringExtra(DEBUG_LAST));
         lastAlarm.setText(lastAlarmText);
 
+        final TextView skipped = findViewById(R.id.debug_skipped_text);
+        String skippedText = getString(R.string.debug_skipped, intent.getIntExtra(DEBUG_SKIPPED, 0));
+        skipped.setText(skippedText);
+
+        final TextView startup = findViewById(R.id.debug_startup_text);
+        String startupText = getString(R.string.debug_startup, intent.getStringExtra(DEBUG_STARTUP));
+        startup.setText(startupText);
+
+        loadHistory();
+    }
+
+    /*
+     * Reads the JobHistory in the background, after any run the ScheduleWriter has yet to record
+     */
+    private void loadHistory() {
+        final JobHistory history = JobHistory.getInstance(this);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        ScheduleWriter.getInstance(this).execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<JobRun> runs = history.read();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isDestroyed()) {
+                            showHistory(runs);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void showHistory(final List<JobRun> runs) {
+        final TextView historyText = findViewById(R.id.debug_history_text);
+        final Button share = findViewById(R.id.debug_share_button);
+        if (runs.isEmpty()) {
+            historyText.setText(R.string.debug_history_empty);
+            share.setEnabled(false);
+            return;
+        }
+        historyText.setText(formatHistory(runs));
+
+        share.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                Intent send = new Intent(Intent.ACTION_SEND)
+                        .setType("text/plain")
+                        .putExtra(Intent.EXTRA_SUBJECT, getString(R.string.debug_share_subject))
+                        .putExtra(Intent.EXTRA_TEXT, JobHistory.toCsv(runs));
+                startActivity(Intent.createChooser(send, getString(R.string.debug_share)));
+            }
+        });
+    }
+
+    /*
+     * The percentiles of the latency and every stage over the kept runs, then the most recent runs
+     */
+    private static String formatHistory(List<JobRun> runs) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%-12s%9s%9s%9s%9s%n",
+                runs.size() + " runs", "p50", "p90", "p99", "max"));
+
+        long[] values = new long[runs.size()];
+        for (int i = 0; i < runs.size(); ++i) {
+            values[i] = runs.get(i).getLatency();
+        }
+        appendPercentiles(text, "late (s)", values, 1000);
+        for (int i = 0; i < runs.size(); ++i) {
+            values[i] = runs.get(i).getTotalMicros();
+        }
+        appendPercentiles(text, "total (ms)", values, 1000);
+        for (int stage = 0; stage < JobRun.STAGE_COUNT; ++stage) {
+            for (int i = 0; i < runs.size(); ++i) {
+                values[i] = runs.get(i).getStageMicros(stage);
+            }
+            appendPercentiles(text, STAGE_NAMES[stage], values, 1000);
+        }
+
+        text.append(String.format(Locale.US, "%nLast runs: start, late, due of stored, total ms%n"));
+        for (int i = runs.size() - 1; i >= Math.max(runs.size() - RECENT_RUNS, 0); --i) {
+            JobRun run = runs.get(i);
+            text.append(String.format(Locale.US, "%s %+ds %d of %d %.1f%s%n",
+                    DateCodec.formatTimestamp(run.getStartTime()), run.getLatency() / 1000,
+                    run.getDueCount(), run.getScheduleCount(), run.getTotalMicros() / 1000.0,
+                    run.isStopped() ? " stopped" : ""));
+        }
+        return text.toString();
+    }
+
+    /*
+     * Appends a row of nearest-rank percentiles, sorting the values
+     *
+     * @param divisor what to divide the values by to get the row's unit
+     */
+    private static void appendPercentiles(StringBuilder text, String label, long[] values, double divisor) {
+        Arrays.sort(values);
+        text.append(String.format(Locale.US, "%-12s", label));
+        for (int percentile : PERCENTILES) {
+            int rank = (int) Math.ceil(percentile / 100.0 * values.length);
+            text.append(String.format(Locale.US, "%9.1f", values[Math.max(rank - 1, 0)] / divisor));
+        }
+        text.append(String.format(Locale.US, "%9.1f%n", values[values.length - 1] / divisor));
     }
 
     @Override
@@ -24,7 +24,7 @@ public class SettingsActivity extends PreferenceActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        Utilities.scheduleNextJob(this,
+        Utilities.scheduleNextJobInBackground(this,
                 this.getSharedPreferences(MainActivity.SHARED_PREFERENCES_NAME, MODE_PRIVATE));
     }
 
@@ -1,17 +1,21 @@
 package com.coconut.young.wateringcan.settings;
 
+import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.PopupMenu;
+import com.coconut.young.wateringcan.MainActivity;
 import com.coconut.young.wateringcan.R;
+import com.coconut.young.wateringcan.storage.ScheduleTransfer;
 
 import static com.coconut.young.wateringcan.MainActivity.SHARED_PREFERENCES_NAME;
 
 /**
- *  The Settings popup menu on the MainActivity. Either has "Settings" or "Settings" and "Debug"
+ *  The Settings popup menu on the MainActivity. Has "Settings", the import and export options, and maybe "Debug"
+ *  Import and export files are chosen through the Storage Access Framework, and the MainActivity transfers them
  */
 public class SettingsMenu extends PopupMenu {
 
@@ -43,6 +47,15 @@ public class SettingsMenu extends PopupMenu {
                 case R.id.debug:
                     openDebugActivity();
                     break;
+                case R.id.import_plants:
+                    chooseImportFile();
+                    break;
+                case R.id.export_csv:
+                    chooseExportFile(ScheduleTransfer.MIME_TYPE_CSV, ".csv", MainActivity.REQUEST_EXPORT_CSV);
+                    break;
+                case R.id.export_json:
+                    chooseExportFile(ScheduleTransfer.MIME_TYPE_JSON, ".json", MainActivity.REQUEST_EXPORT_JSON);
+                    break;
             }
 
             return true;
@@ -55,10 +68,30 @@ public class SettingsMenu extends PopupMenu {
         }
 
 
+        private void chooseImportFile() {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            // spreadsheets are often saved with a generic type, the file's contents decide how it is read
+            intent.setType("*/*");
+            ((Activity) context).startActivityForResult(intent, MainActivity.REQUEST_IMPORT);
+        }
+
+
+        private void chooseExportFile(String mimeType, String extension, int requestCode) {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType(mimeType);
+            intent.putExtra(Intent.EXTRA_TITLE, context.getString(R.string.export_file_name) + extension);
+            ((Activity) context).startActivityForResult(intent, requestCode);
+        }
+
+
         private void openDebugActivity() {
             Intent intent = new Intent(context, DebugActivity.class);
             intent.putExtra(DebugActivity.DEBUG_NEXT, sharedPref.getString(DebugActivity.DEBUG_NEXT, "N/A"));
             intent.putExtra(DebugActivity.DEBUG_LAST, sharedPref.getString(DebugActivity.DEBUG_LAST, "N/A"));
+            intent.putExtra(DebugActivity.DEBUG_SKIPPED, sharedPref.getInt(DebugActivity.DEBUG_SKIPPED, 0));
+            intent.putExtra(DebugActivity.DEBUG_STARTUP, sharedPref.getString(DebugActivity.DEBUG_STARTUP, "N/A"));
 
             context.startActivity(intent);
         }
@@ -0,0 +1,480 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact summary of which stored PlantSchedules are due on each day, so the due ones can be counted
+ * and listed without reading the rows
+ *
+ * PlantSchedules are grouped by their interval and the phase of their watering days in it, so the ones
+ * due on a day are the groups whose phase the day falls on. The due count of each of the DAYS days from
+ * the first day is kept, along with the ids in each group and the ids marked as needing water. Each group
+ * also counts its marked ids, so the marked ones due on a day are counted without looking up any id.
+ * A PlantSchedule whose reference day is after the first day is kept apart and checked on its own,
+ * its first watering day does not follow its phase.
+ *
+ * The digest is stamped with the ScheduleStore generation it matches, and is stale once the store has
+ * another one. It is written with a checksum, so a file that was cut short or corrupted is rejected
+ * rather than read as wrong counts. It does not use the Android framework, and is guarded by the ScheduleStore.
+ */
+public class DueDigest {
+
+    // the number of days the due counts are kept for
+    public static final int DAYS = 60;
+    // the generation of a digest that matches none of the ScheduleStore, such as one being updated
+    public static final long NO_GENERATION = -1;
+
+    private static final int MAGIC = 0x57434444; // "WCDD"
+    private static final int VERSION = 2;
+
+    /*
+     * Ids in ascending order, in an array that grows as needed
+     */
+    private static class IdSet {
+        long[] ids = new long[4];
+        int size = 0;
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        void add(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            ++size;
+        }
+
+        boolean remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            --size;
+            return true;
+        }
+    }
+
+    /*
+     * The PlantSchedules watered every interval days, on the days congruent to the phase
+     */
+    private static class Group extends IdSet {
+        private final int interval;
+        private final int phase;
+        // the number of the group's ids that are marked as needing water
+        private int markedCount = 0;
+
+        private Group(int interval, int phase) {
+            this.interval = interval;
+            this.phase = phase;
+        }
+
+        private boolean isWateringDay(int day) {
+            return floorMod(day - phase, interval) == 0;
+        }
+    }
+
+    private long generation;
+    private int firstDay;
+    private int size = 0;
+    private final int[] counts = new int[DAYS];
+    // whether the counts are up to date with the groups
+    private boolean counted = false;
+    // keyed by the interval in the high half and the phase in the low half, so they are written in order
+    private final TreeMap<Long, Group> groups = new TreeMap<>();
+    // the reference day and interval of each PlantSchedule whose reference day is after the first day
+    private final Map<Long, int[]> early = new HashMap<>();
+    private final IdSet marked = new IdSet();
+
+    /**
+     * @param generation the ScheduleStore generation the digest will match
+     * @param firstDay the first day to keep the due count of, from PlantSchedule.today()
+     */
+    public DueDigest(long generation, int firstDay) {
+        this.generation = generation;
+        this.firstDay = firstDay;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * @return the number of PlantSchedules in the digest
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a PlantSchedule, or replace the one with its id
+     *
+     * @param id the PlantSchedule's id
+     * @param refDay the PlantSchedule's reference day
+     * @param interval the PlantSchedule's interval
+     * @param water whether the PlantSchedule is marked as needing water
+     */
+    public void put(long id, int refDay, int interval, boolean water) {
+        remove(id);
+        if (refDay > firstDay) {
+            early.put(id, new int[] { refDay, interval });
+        } else {
+            Group group = group(interval, floorMod(refDay, interval));
+            group.add(id);
+            if (water) {
+                ++group.markedCount;
+            }
+        }
+        if (water) {
+            marked.add(id);
+        }
+        ++size;
+        counted = false;
+    }
+
+    /**
+     * Remove a PlantSchedule, if it is in the digest
+     *
+     * @param id the PlantSchedule's id
+     */
+    public void remove(long id) {
+        boolean removed = early.remove(id) != null;
+        if (!removed) {
+            Iterator<Group> iterator = groups.values().iterator();
+            while (iterator.hasNext()) {
+                Group group = iterator.next();
+                if (group.remove(id)) {
+                    if (marked.contains(id)) {
+                        --group.markedCount;
+                    }
+                    if (group.size == 0) {
+                        iterator.remove();
+                    }
+                    removed = true;
+                    break;
+                }
+            }
+        }
+        if (removed) {
+            marked.remove(id);
+            --size;
+            counted = false;
+        }
+    }
+
+    /**
+     * Move the days the due counts are kept for, the PlantSchedules do not change
+     *
+     * @param day the new first day, from PlantSchedule.today()
+     */
+    public void moveTo(int day) {
+        if (day == firstDay) {
+            return;
+        }
+        firstDay = day;
+        // the PlantSchedules whose reference day has been reached now follow their phase
+        Iterator<Map.Entry<Long, int[]>> iterator = early.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, int[]> entry = iterator.next();
+            int refDay = entry.getValue()[0];
+            int interval = entry.getValue()[1];
+            if (refDay <= firstDay) {
+                Group group = group(interval, floorMod(refDay, interval));
+                group.add(entry.getKey());
+                if (marked.contains(entry.getKey())) {
+                    ++group.markedCount;
+                }
+                iterator.remove();
+            }
+        }
+        counted = false;
+    }
+
+    /**
+     * @return whether the due count of the day is kept, rather than counted from the groups
+     */
+    public boolean covers(int day) {
+        return day >= firstDay && day < firstDay + DAYS;
+    }
+
+    /**
+     * @param day a day on or after the first day, from PlantSchedule.today()
+     * @return the number of PlantSchedules that should be watered on the day
+     */
+    public int countDue(int day) {
+        if (covers(day)) {
+            count();
+            return counts[day - firstDay];
+        }
+        int due = 0;
+        for (Group group : groups.values()) {
+            if (group.isWateringDay(day)) {
+                due += group.size;
+            }
+        }
+        for (int[] values : early.values()) {
+            if (PlantSchedule.isWateringDay(values[0], values[1], day)) {
+                ++due;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @param day a day on or after the first day, from PlantSchedule.today()
+     * @return the number of PlantSchedules that should be watered on the day and are marked as needing water
+     */
+    public int countMarkedDue(int day) {
+        int due = 0;
+        for (Group group : groups.values()) {
+            if (group.isWateringDay(day)) {
+                due += group.markedCount;
+            }
+        }
+        for (Map.Entry<Long, int[]> entry : early.entrySet()) {
+            int[] values = entry.getValue();
+            if (PlantSchedule.isWateringDay(values[0], values[1], day) && marked.contains(entry.getKey())) {
+                ++due;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @param day a day on or after the first day, from PlantSchedule.today()
+     * @return the first day, on or after the day, that any PlantSchedule should be watered,
+     *          or NOTHING_DUE if the digest is empty
+     */
+    public int getNextDueDay(int day) {
+        int nextDueDay = ScheduleDueIndex.NOTHING_DUE;
+        for (Group group : groups.values()) {
+            nextDueDay = Math.min(nextDueDay, day + floorMod(group.phase - day, group.interval));
+        }
+        for (Map.Entry<Long, int[]> entry : early.entrySet()) {
+            int[] values = entry.getValue();
+            PlantSchedule sched = new PlantSchedule(entry.getKey(), null, values[0], values[1], false);
+            nextDueDay = Math.min(nextDueDay, sched.getNextWateringDay(day));
+        }
+        return nextDueDay;
+    }
+
+    /**
+     * List the PlantSchedules that should be watered on a day, with the values the digest keeps
+     * Each one's reference day is its most recent watering day and its name is null
+     *
+     * @param day a day on or after the first day, from PlantSchedule.today()
+     * @param afterId only list PlantSchedules added after this one, or NO_ID to list every due one
+     * @return the due PlantSchedules, in the order they were added
+     */
+    public ScheduleTable getDue(int day, long afterId) {
+        TreeMap<Long, int[]> due = new TreeMap<>();
+        for (Group group : groups.values()) {
+            if (!group.isWateringDay(day)) {
+                continue;
+            }
+            int start = Arrays.binarySearch(group.ids, 0, group.size, afterId);
+            for (int i = start >= 0 ? start + 1 : -start - 1; i < group.size; ++i) {
+                due.put(group.ids[i], new int[] { day, group.interval });
+            }
+        }
+        for (Map.Entry<Long, int[]> entry : early.entrySet()) {
+            int[] values = entry.getValue();
+            if (entry.getKey() > afterId && PlantSchedule.isWateringDay(values[0], values[1], day)) {
+                due.put(entry.getKey(), new int[] {
+                        PlantSchedule.mostRecentWateringDay(values[0], values[1], day), values[1] });
+            }
+        }
+
+        ScheduleTable table = new ScheduleTable(due.size());
+        for (Map.Entry<Long, int[]> entry : due.entrySet()) {
+            int[] values = entry.getValue();
+            table.add(entry.getKey(), null, values[0], values[1], marked.contains(entry.getKey()));
+        }
+        return table;
+    }
+
+    /**
+     * Write the digest, with the due counts ahead of the ids so they can be read without the rest
+     * and a checksum of it all at the end
+     */
+    public void write(DataOutputStream out) throws IOException {
+        count();
+        CRC32 checksum = new CRC32();
+        DataOutputStream checkedOut = new DataOutputStream(new CheckedOutputStream(out, checksum));
+        writeContent(checkedOut);
+        checkedOut.flush();
+        out.writeLong(checksum.getValue());
+    }
+
+    private void writeContent(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(generation);
+        out.writeInt(firstDay);
+        out.writeInt(size);
+        for (int count : counts) {
+            out.writeInt(count);
+        }
+
+        out.writeInt(groups.size());
+        for (Group group : groups.values()) {
+            out.writeInt(group.interval);
+            out.writeInt(group.phase);
+            writeIds(out, group);
+        }
+        out.writeInt(early.size());
+        for (Map.Entry<Long, int[]> entry : early.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue()[0]);
+            out.writeInt(entry.getValue()[1]);
+        }
+        writeIds(out, marked);
+    }
+
+    /**
+     * Read a digest written by write
+     *
+     * @return the digest
+     * @throws IOException if the digest could not be read, is not one, or does not match its checksum
+     */
+    public static DueDigest read(DataInputStream in) throws IOException {
+        CRC32 checksum = new CRC32();
+        DueDigest digest = readContent(new DataInputStream(new CheckedInputStream(in, checksum)));
+        if (in.readLong() != checksum.getValue()) {
+            throw new IOException("Due digest checksum mismatch");
+        }
+        return digest;
+    }
+
+    private static DueDigest readContent(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a due digest");
+        }
+        DueDigest digest = new DueDigest(in.readLong(), in.readInt());
+        digest.size = in.readInt();
+        for (int i = 0; i < DAYS; ++i) {
+            digest.counts[i] = in.readInt();
+        }
+        digest.counted = true;
+
+        int groupCount = in.readInt();
+        for (int i = 0; i < groupCount; ++i) {
+            int interval = in.readInt();
+            int phase = in.readInt();
+            if (interval <= 0) {
+                throw new IOException("Invalid interval " + interval);
+            }
+            readIds(in, digest.group(interval, phase));
+        }
+        int earlyCount = in.readInt();
+        for (int i = 0; i < earlyCount; ++i) {
+            long id = in.readLong();
+            int refDay = in.readInt();
+            int interval = in.readInt();
+            if (interval <= 0) {
+                throw new IOException("Invalid interval " + interval);
+            }
+            digest.early.put(id, new int[] { refDay, interval });
+        }
+        readIds(in, digest.marked);
+        for (Group group : digest.groups.values()) {
+            for (int i = 0; i < group.size; ++i) {
+                if (digest.marked.contains(group.ids[i])) {
+                    ++group.markedCount;
+                }
+            }
+        }
+        return digest;
+    }
+
+    private Group group(int interval, int phase) {
+        Long key = ((long) interval << 32) | phase;
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(interval, phase);
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    /*
+     * Counts the PlantSchedules due on each day, if they changed since they were last counted
+     */
+    private void count() {
+        if (counted) {
+            return;
+        }
+        Arrays.fill(counts, 0);
+        for (Group group : groups.values()) {
+            for (int day = firstDay + floorMod(group.phase - firstDay, group.interval);
+                 day < firstDay + DAYS; day += group.interval) {
+                counts[day - firstDay] += group.size;
+            }
+        }
+        for (int[] values : early.values()) {
+            for (int i = 0; i < DAYS; ++i) {
+                if (PlantSchedule.isWateringDay(values[0], values[1], firstDay + i)) {
+                    ++counts[i];
+                }
+            }
+        }
+        counted = true;
+    }
+
+    private static void writeIds(DataOutputStream out, IdSet set) throws IOException {
+        out.writeInt(set.size);
+        for (int i = 0; i < set.size; ++i) {
+            out.writeLong(set.ids[i]);
+        }
+    }
+
+    private static void readIds(DataInputStream in, IdSet set) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid count " + count);
+        }
+        // the array grows as the ids are read, so a corrupted count fails at the end of the file
+        // instead of allocating it all up front
+        set.size = 0;
+        for (int i = 0; i < count; ++i) {
+            if (set.size == set.ids.length) {
+                set.ids = Arrays.copyOf(set.ids, set.size * 2);
+            }
+            set.ids[set.size++] = in.readLong();
+        }
+    }
+
+    private static int floorMod(int x, int y) {
+        int mod = x % y;
+        return mod < 0 ? mod + y : mod;
+    }
+}
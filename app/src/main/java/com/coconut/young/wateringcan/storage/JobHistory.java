@@ -0,0 +1,202 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.utils.DateCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the JobRuns of the last CAPACITY NotificationJobService runs, in a fixed-size binary file
+ *
+ * The file is a ring buffer: a header holding the next slot to write and the number of records,
+ * then CAPACITY records of RECORD_SIZE bytes. Appending a run writes one record and the header,
+ * so recording a run costs the same however long the app has been running.
+ *
+ * Every public method may be called from any thread, calls are serialized on the history
+ */
+public class JobHistory {
+
+    private static final String TAG = MainActivity.TAG + "." + JobHistory.class.getSimpleName();
+
+    private static final String FILE_NAME = "job_history.bin";
+
+    // the number of runs kept
+    public static final int CAPACITY = 256;
+
+    // "WCJH", followed by the format version, the next slot and the number of records
+    private static final int MAGIC = 0x57434a48;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * 4;
+    // start time, scheduled time, then the counts, the flags and the stage timings
+    private static final int RECORD_SIZE = 8 + 8 + 3 * 4 + 4 + JobRun.STAGE_COUNT * 4;
+
+    private static final int FLAG_STOPPED = 1;
+
+    private static JobHistory instance;
+
+    private final File file;
+
+    private JobHistory(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    public static synchronized JobHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new JobHistory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Record a run, replacing the oldest one if CAPACITY runs are kept
+     *
+     * @param run the finished run
+     * @param stopped whether the run was stopped before it evaluated every PlantSchedule, which is
+     *                passed as it was then, a stop that comes after the evaluation does not count
+     */
+    public synchronized void append(JobRun run, boolean stopped) {
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(file, "rw");
+            ByteBuffer header = readHeader(out);
+            int next = header.getInt(8);
+            int count = header.getInt(12);
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putLong(run.getStartTime())
+                    .putLong(run.getScheduledTime())
+                    .putInt(run.getScheduleCount())
+                    .putInt(run.getDueCount())
+                    .putInt(run.getNotifiedCount())
+                    .putInt(stopped ? FLAG_STOPPED : 0);
+            for (int stage = 0; stage < JobRun.STAGE_COUNT; ++stage) {
+                record.putInt(run.getStageMicros(stage));
+            }
+            out.seek(HEADER_SIZE + (long) next * RECORD_SIZE);
+            out.write(record.array());
+
+            header.putInt(8, (next + 1) % CAPACITY);
+            header.putInt(12, Math.min(count + 1, CAPACITY));
+            out.seek(0);
+            out.write(header.array());
+        } catch (IOException e) {
+            Log.e(TAG, "Exception recording job run", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * @return every kept run, oldest first
+     */
+    public synchronized List<JobRun> read() {
+        List<JobRun> runs = new ArrayList<>();
+        if (!file.exists()) {
+            return runs;
+        }
+
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            byte[] bytes = new byte[(int) Math.min(in.length(), HEADER_SIZE + (long) CAPACITY * RECORD_SIZE)];
+            in.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (bytes.length < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return runs;
+            }
+            int next = buffer.getInt(8);
+            int count = buffer.getInt(12);
+            if (next < 0 || next >= CAPACITY || count < 0 || count > CAPACITY) {
+                return runs;
+            }
+
+            int[] stageMicros = new int[JobRun.STAGE_COUNT];
+            for (int i = 0; i < count; ++i) {
+                // the oldest record is the next one to be replaced, or the first if the buffer has not wrapped
+                int slot = (next - count + i + CAPACITY) % CAPACITY;
+                buffer.position(HEADER_SIZE + slot * RECORD_SIZE);
+                long startTime = buffer.getLong();
+                long scheduledTime = buffer.getLong();
+                int scheduleCount = buffer.getInt();
+                int dueCount = buffer.getInt();
+                int notifiedCount = buffer.getInt();
+                boolean stopped = (buffer.getInt() & FLAG_STOPPED) != 0;
+                for (int stage = 0; stage < JobRun.STAGE_COUNT; ++stage) {
+                    stageMicros[stage] = buffer.getInt();
+                }
+                runs.add(new JobRun(startTime, scheduledTime, stageMicros,
+                        scheduleCount, dueCount, notifiedCount, stopped));
+            }
+        } catch (IOException | RuntimeException e) {
+            // a damaged file only loses the history
+            Log.e(TAG, "Exception reading job history", e);
+        } finally {
+            close(in);
+        }
+        return runs;
+    }
+
+    /**
+     * Format runs as CSV, one line per run, for bug reports
+     *
+     * @param runs the runs to format, from read()
+     * @return the CSV, with a header
+     */
+    public static String toCsv(List<JobRun> runs) {
+        StringBuilder csv = new StringBuilder(64 * (runs.size() + 1));
+        csv.append("start,latency_ms,schedules,due,notified,stopped,load_us,evaluate_us,save_us,notify_us,reschedule_us\n");
+        for (JobRun run : runs) {
+            csv.append(DateCodec.formatTimestamp(run.getStartTime()))
+                    .append(',').append(run.getLatency())
+                    .append(',').append(run.getScheduleCount())
+                    .append(',').append(run.getDueCount())
+                    .append(',').append(run.getNotifiedCount())
+                    .append(',').append(run.isStopped());
+            for (int stage = 0; stage < JobRun.STAGE_COUNT; ++stage) {
+                csv.append(',').append(run.getStageMicros(stage));
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /*
+     * Reads the header, starting a new history if the file is new, damaged or in another format
+     */
+    private static ByteBuffer readHeader(RandomAccessFile file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (file.length() >= HEADER_SIZE) {
+            file.seek(0);
+            file.readFully(header.array());
+            int next = header.getInt(8);
+            int count = header.getInt(12);
+            if (header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && next >= 0 && next < CAPACITY && count >= 0 && count <= CAPACITY) {
+                return header;
+            }
+        }
+
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0).putInt(12, 0);
+        file.setLength(HEADER_SIZE + (long) CAPACITY * RECORD_SIZE);
+        return header;
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Exception closing job history", e);
+        }
+    }
+}
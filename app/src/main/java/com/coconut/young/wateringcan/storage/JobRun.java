@@ -0,0 +1,131 @@
+package com.coconut.young.wateringcan.storage;
+
+/**
+ * The timings of one NotificationJobService run, recorded stage by stage and kept in the JobHistory
+ *
+ * Stages are timed one after another, on whichever thread runs them, and timing a stage more than
+ * once adds to it. The run can be stopped from any thread, and the stages check between PlantSchedules.
+ */
+public class JobRun {
+
+    public static final int STAGE_LOAD = 0;
+    public static final int STAGE_EVALUATE = 1;
+    public static final int STAGE_SAVE = 2;
+    public static final int STAGE_NOTIFY = 3;
+    public static final int STAGE_RESCHEDULE = 4;
+    public static final int STAGE_COUNT = 5;
+
+    // the scheduled time when the job was not scheduled through the JobReconciler
+    public static final long NOT_SCHEDULED = -1;
+
+    private final long startTime;
+    private final long scheduledTime;
+    private final int[] stageMicros = new int[STAGE_COUNT];
+    private int scheduleCount = 0;
+    private int dueCount = 0;
+    private int notifiedCount = 0;
+    private volatile boolean stopped = false;
+    // when the current stage started, from System.nanoTime()
+    private long stageStart;
+
+    /**
+     * @param startTime when the job started, in milliseconds since the epoch
+     * @param scheduledTime when the job was scheduled to start, or NOT_SCHEDULED
+     */
+    public JobRun(long startTime, long scheduledTime) {
+        this.startTime = startTime;
+        this.scheduledTime = scheduledTime;
+    }
+
+    /*Package-Private*/ JobRun(long startTime, long scheduledTime, int[] stageMicros,
+                               int scheduleCount, int dueCount, int notifiedCount, boolean stopped) {
+        this(startTime, scheduledTime);
+        this.stopped = stopped;
+        System.arraycopy(stageMicros, 0, this.stageMicros, 0, STAGE_COUNT);
+        this.scheduleCount = scheduleCount;
+        this.dueCount = dueCount;
+        this.notifiedCount = notifiedCount;
+    }
+
+    /**
+     * Ask the run to stop at the next PlantSchedule, keeping the ones already evaluated
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public void beginStage() {
+        stageStart = System.nanoTime();
+    }
+
+    /**
+     * @param stage the stage that began with the last beginStage
+     */
+    public void endStage(int stage) {
+        stageMicros[stage] += (int) ((System.nanoTime() - stageStart) / 1000);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getScheduledTime() {
+        return scheduledTime;
+    }
+
+    /**
+     * @return how long after its scheduled time the job started, in milliseconds, or 0 if it was not scheduled
+     */
+    public long getLatency() {
+        return scheduledTime == NOT_SCHEDULED ? 0 : startTime - scheduledTime;
+    }
+
+    /**
+     * @return how long a stage took, in microseconds
+     */
+    public int getStageMicros(int stage) {
+        return stageMicros[stage];
+    }
+
+    /**
+     * @return how long every stage took together, in microseconds
+     */
+    public long getTotalMicros() {
+        long total = 0;
+        for (int micros : stageMicros) {
+            total += micros;
+        }
+        return total;
+    }
+
+    // the number of stored PlantSchedules
+    public int getScheduleCount() {
+        return scheduleCount;
+    }
+
+    public void setScheduleCount(int scheduleCount) {
+        this.scheduleCount = scheduleCount;
+    }
+
+    // the number of PlantSchedules the job evaluated
+    public int getDueCount() {
+        return dueCount;
+    }
+
+    public void setDueCount(int dueCount) {
+        this.dueCount = dueCount;
+    }
+
+    // the number of plants the notification counted
+    public int getNotifiedCount() {
+        return notifiedCount;
+    }
+
+    public void setNotifiedCount(int notifiedCount) {
+        this.notifiedCount = notifiedCount;
+    }
+}
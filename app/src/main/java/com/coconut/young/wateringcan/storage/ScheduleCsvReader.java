@@ -0,0 +1,177 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleInput;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records of PlantSchedules one at a time, without holding the whole file in memory
+ *
+ * Each record holds the columns: `name`,`date`,`interval`, and may hold `water`. If the first record
+ * is a header naming the columns, in any order, the columns are read in its order. Fields may be
+ * quoted, with "" for a quote inside one, and quoted fields may span lines.
+ *
+ * Invalid records are only counted, the reader does not use the Android framework so it can also be
+ * benchmarked on the JVM
+ */
+public class ScheduleCsvReader implements ScheduleReader {
+
+    /*Package-Private*/ static final String[] COLUMNS = { "name", "date", "interval", "water" };
+    private static final int NAME = 0;
+    private static final int DATE = 1;
+    private static final int INTERVAL = 2;
+    private static final int WATER = 3;
+
+    private final Reader in;
+    // the fields of the current record
+    private final List<String> fields = new ArrayList<>(COLUMNS.length);
+    private final StringBuilder field = new StringBuilder();
+    // the position of each column in a record, or -1 if it is missing
+    private final int[] positions = { NAME, DATE, INTERVAL, WATER };
+    private boolean started = false;
+    private boolean ended = false;
+    private int skipped = 0;
+
+    /**
+     * @param in the CSV, which should be buffered as it is read a character at a time
+     */
+    public ScheduleCsvReader(Reader in) {
+        this.in = in;
+    }
+
+    @Override
+    public PlantSchedule read() throws IOException {
+        while (readRecord()) {
+            if (!started) {
+                started = true;
+                if (readHeader()) {
+                    continue;
+                }
+            }
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                // a blank line
+                continue;
+            }
+
+            try {
+                PlantSchedule sched = ScheduleInput.parse(column(NAME), column(DATE), column(INTERVAL));
+                String water = column(WATER);
+                if (water != null && !water.trim().isEmpty()) {
+                    sched.setWaterToday(parseBoolean(water.trim()));
+                }
+                return sched;
+            } catch (ParseException e) {
+                ++skipped;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /*
+     * Reads the column positions from the current record if it is a header
+     *
+     * @return whether the record was a header
+     */
+    private boolean readHeader() {
+        int[] header = new int[COLUMNS.length];
+        boolean isHeader = false;
+        for (int column = 0; column < COLUMNS.length; ++column) {
+            header[column] = -1;
+            for (int i = 0; i < fields.size(); ++i) {
+                if (COLUMNS[column].equalsIgnoreCase(fields.get(i).trim())) {
+                    header[column] = i;
+                    isHeader = true;
+                }
+            }
+        }
+        if (isHeader) {
+            System.arraycopy(header, 0, positions, 0, positions.length);
+        }
+        return isHeader;
+    }
+
+    private String column(int column) {
+        int position = positions[column];
+        return position >= 0 && position < fields.size() ? fields.get(position) : null;
+    }
+
+    /*Package-Private*/ static boolean parseBoolean(String text) throws ParseException {
+        if ("true".equalsIgnoreCase(text) || "yes".equalsIgnoreCase(text) || "1".equals(text)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(text) || "no".equalsIgnoreCase(text) || "0".equals(text)) {
+            return false;
+        }
+        throw new ParseException("Please enter whether the plant needs water as true or false", 0);
+    }
+
+    /*
+     * Reads the next record into the fields
+     *
+     * @return false at the end of the file
+     */
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        if (ended) {
+            return false;
+        }
+
+        field.setLength(0);
+        boolean quoted = false;
+        boolean empty = true;
+        int c;
+        while ((c = in.read()) != -1) {
+            empty = false;
+            if (quoted) {
+                if (c != '"') {
+                    field.append((char) c);
+                    continue;
+                }
+                c = in.read();
+                if (c == '"') {
+                    // an escaped quote
+                    field.append('"');
+                    continue;
+                }
+                quoted = false;
+                if (c == -1) {
+                    break;
+                }
+            }
+
+            if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+
+        if (c == -1) {
+            ended = true;
+            if (empty) {
+                return false;
+            }
+        }
+        fields.add(field.toString());
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.ScheduleTable;
+import com.coconut.young.wateringcan.utils.DateCodec;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes PlantSchedules as CSV records one at a time, in the format ScheduleCsvReader reads
+ * The first record is a header naming the columns
+ */
+public class ScheduleCsvWriter {
+
+    private final Writer out;
+    private boolean started = false;
+
+    /**
+     * @param out where to write the CSV, which should be buffered as it is written a field at a time
+     */
+    public ScheduleCsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write a row of a ScheduleTable as a record
+     *
+     * @param table the table holding the PlantSchedule
+     * @param index the row's index
+     */
+    public void write(ScheduleTable table, int index) throws IOException {
+        if (!started) {
+            writeHeader();
+            started = true;
+        }
+
+        writeField(table.getName(index));
+        out.write(',');
+        out.write(DateCodec.formatDay(table.getRefDay(index)));
+        out.write(',');
+        out.write(Integer.toString(table.getWaterInterval(index)));
+        out.write(',');
+        out.write(table.getWaterToday(index) ? "true" : "false");
+        out.write('\n');
+    }
+
+    /**
+     * Write the header if nothing has been written, so a file without PlantSchedules still names its columns
+     */
+    public void finish() throws IOException {
+        if (!started) {
+            writeHeader();
+            started = true;
+        }
+        out.flush();
+    }
+
+    private void writeHeader() throws IOException {
+        String[] columns = ScheduleCsvReader.COLUMNS;
+        for (int i = 0; i < columns.length; ++i) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(columns[i]);
+        }
+        out.write('\n');
+    }
+
+    // quotes a field only if it holds a character that would end it
+    private void writeField(String text) throws IOException {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            out.write(text);
+            return;
+        }
+        out.write('"');
+        out.write(text.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
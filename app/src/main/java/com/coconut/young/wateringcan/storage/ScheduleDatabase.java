@@ -0,0 +1,93 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * SQLiteOpenHelper boilerplate for the database holding every PlantSchedule
+ * Each PlantSchedule is one row, keyed by its id
+ */
+public class ScheduleDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "schedules.db";
+    private static final int DATABASE_VERSION = 5;
+
+    /*Package-Private*/ static final String TABLE_SCHEDULES = "schedules";
+    /*Package-Private*/ static final String COLUMN_ID = "_id";
+    /*Package-Private*/ static final String COLUMN_NAME = "name";
+    /*Package-Private*/ static final String COLUMN_REF_DAY = "ref_day";
+    /*Package-Private*/ static final String COLUMN_INTERVAL = "water_interval";
+    /*Package-Private*/ static final String COLUMN_WATER = "water_today";
+    // the next day the PlantSchedule should be watered, as of when the row was written
+    /*Package-Private*/ static final String COLUMN_NEXT_DUE = "next_due";
+
+    /*Package-Private*/ static final String TABLE_METADATA = "metadata";
+    /*Package-Private*/ static final String COLUMN_KEY = "key";
+    /*Package-Private*/ static final String COLUMN_VALUE = "value";
+
+    // incremented every time the schedules table changes
+    /*Package-Private*/ static final String KEY_GENERATION = "generation";
+
+    /*Package-Private*/ ScheduleDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SCHEDULES + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_NAME + " TEXT NOT NULL, "
+                + COLUMN_REF_DAY + " INTEGER NOT NULL, "
+                + COLUMN_INTERVAL + " INTEGER NOT NULL, "
+                + COLUMN_WATER + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_NEXT_DUE + " INTEGER NOT NULL DEFAULT 0)");
+        createNextDueIndex(db);
+        createNameIndex(db);
+        createIntervalIndex(db);
+        createMetadata(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createMetadata(db);
+        }
+        if (oldVersion < 3) {
+            // every row starts out due, and is rolled forward by the next NotificationJobService run
+            db.execSQL("ALTER TABLE " + TABLE_SCHEDULES + " ADD COLUMN "
+                    + COLUMN_NEXT_DUE + " INTEGER NOT NULL DEFAULT 0");
+            createNextDueIndex(db);
+        }
+        if (oldVersion < 4) {
+            createNameIndex(db);
+        }
+        if (oldVersion < 5) {
+            createIntervalIndex(db);
+        }
+    }
+
+    private static void createNextDueIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + TABLE_SCHEDULES + "_" + COLUMN_NEXT_DUE + " ON "
+                + TABLE_SCHEDULES + " (" + COLUMN_NEXT_DUE + ")");
+    }
+
+    // names are searched by prefix, ignoring the case of ASCII letters
+    private static void createNameIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + TABLE_SCHEDULES + "_" + COLUMN_NAME + " ON "
+                + TABLE_SCHEDULES + " (" + COLUMN_NAME + " COLLATE NOCASE)");
+    }
+
+    // the list can be ordered by how often each plant is watered
+    private static void createIntervalIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + TABLE_SCHEDULES + "_" + COLUMN_INTERVAL + " ON "
+                + TABLE_SCHEDULES + " (" + COLUMN_INTERVAL + ")");
+    }
+
+    private static void createMetadata(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_METADATA + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_VALUE + " INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + TABLE_METADATA + " VALUES ('" + KEY_GENERATION + "', 0)");
+    }
+}
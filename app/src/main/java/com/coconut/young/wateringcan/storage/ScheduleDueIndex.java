@@ -0,0 +1,23 @@
+package com.coconut.young.wateringcan.storage;
+
+/**
+ * Answers when stored PlantSchedules are next due, which is all scheduling the next job needs to know
+ */
+public interface ScheduleDueIndex {
+
+    // returned by getNextDueDay when no PlantSchedule is stored
+    int NOTHING_DUE = Integer.MAX_VALUE;
+
+    /**
+     * @param day the first day to consider, from PlantSchedule.today()
+     * @return the first day, on or after the day, that any PlantSchedule should be watered,
+     *          or NOTHING_DUE if there are no PlantSchedules
+     */
+    int getNextDueDay(int day);
+
+    /**
+     * @param day the day to check, from PlantSchedule.today()
+     * @return whether any PlantSchedule that should be watered on the day is still marked as needing water
+     */
+    boolean hasUnwatered(int day);
+}
@@ -0,0 +1,137 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleInput;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+
+/**
+ * Reads a JSON array of PlantSchedules one at a time, without building the whole array in memory
+ * Each element must hold the keys: `name`,`interval`,`date`, and may hold `water`
+ * Elements that are not objects, or hold values of the wrong type, are skipped like invalid ones
+ */
+public class ScheduleJsonReader implements ScheduleReader {
+
+    private static final String TAG = MainActivity.TAG + "." + ScheduleJsonReader.class.getSimpleName();
+
+    private final JsonReader reader;
+    private boolean inArray = false;
+    private int skipped = 0;
+
+    public ScheduleJsonReader(Reader in) {
+        this.reader = new JsonReader(in);
+    }
+
+    /**
+     * Read the next valid PlantSchedule in the array, skipping any incomplete or invalid elements
+     *
+     * @return the next PlantSchedule, or null if the end of the array has been reached
+     * @throws IOException if the input is not a JSON array of objects
+     */
+    @Override
+    public PlantSchedule read() throws IOException {
+        if (!inArray) {
+            reader.beginArray();
+            inArray = true;
+        }
+
+        while (reader.hasNext()) {
+            PlantSchedule sched = readSchedule();
+            if (sched != null) {
+                return sched;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private PlantSchedule readSchedule() throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            skip("not an object");
+            return null;
+        }
+
+        String name = null;
+        String date = null;
+        String interval = null;
+        String water = null;
+        // a value of the wrong type makes the element invalid, but the rest of it is still read
+        boolean valid = true;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (key) {
+                case "name":
+                case "date":
+                case "interval":
+                case "water":
+                    // strings, numbers and booleans are all read as text, and parsed below
+                    if (token != JsonToken.STRING && token != JsonToken.NUMBER && token != JsonToken.BOOLEAN) {
+                        reader.skipValue();
+                        valid = false;
+                        break;
+                    }
+                    String value = token == JsonToken.BOOLEAN
+                            ? Boolean.toString(reader.nextBoolean()) : reader.nextString();
+                    if ("name".equals(key)) {
+                        name = value;
+                    } else if ("date".equals(key)) {
+                        date = value;
+                    } else if ("interval".equals(key)) {
+                        interval = value;
+                    } else {
+                        water = value;
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!valid) {
+            skip("a value is not text, a number or a boolean");
+            return null;
+        }
+        try {
+            PlantSchedule sched = ScheduleInput.parse(name, date, interval);
+            if (water != null) {
+                sched.setWaterToday(ScheduleCsvReader.parseBoolean(water.trim()));
+            }
+            return sched;
+        } catch (ParseException e) {
+            skip(e.getMessage());
+            return null;
+        }
+    }
+
+    private void skip(String reason) {
+        if (skipped++ == 0) {
+            Log.e(TAG, "Skipping invalid PlantSchedule: " + reason);
+        }
+    }
+}
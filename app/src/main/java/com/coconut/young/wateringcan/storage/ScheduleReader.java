@@ -0,0 +1,25 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads PlantSchedules from a file one at a time, without holding the whole file in memory
+ */
+public interface ScheduleReader extends Closeable {
+
+    /**
+     * Read the next valid PlantSchedule, skipping any that break the rules of ScheduleInput
+     *
+     * @return the next PlantSchedule, without an id, or null at the end of the file
+     * @throws IOException if the file cannot be read or is not in the reader's format
+     */
+    PlantSchedule read() throws IOException;
+
+    /**
+     * @return the number of PlantSchedules skipped so far
+     */
+    int getSkipped();
+}
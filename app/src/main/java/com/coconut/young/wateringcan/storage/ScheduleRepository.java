@@ -0,0 +1,593 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+import com.coconut.young.wateringcan.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The decoded PlantSchedules of the process, shared by the MainActivity and the NotificationJobService.
+ * It stays loaded for the life of the process, so recreating the MainActivity does not load it again.
+ *
+ * Only the number of PlantSchedules is loaded up front. The PlantSchedules themselves are loaded in pages
+ * around the visible rows, and pages far from them are dropped, so neither the memory used nor the time
+ * to show the list grows with the number of PlantSchedules.
+ *
+ * The PlantSchedules can be ordered by when they were added, their next watering day or their interval.
+ * Each order is kept by an index of the ScheduleStore, which every write updates in place, so the list
+ * is never sorted. A change that moves a loaded row to another position reloads the visible pages.
+ * Ordered by their next watering day, the rows whose day has passed are moved once a day.
+ *
+ * The repository is only used on the main thread. Reads and writes happen in the background through the
+ * ScheduleWriter, and Observers are told exactly which rows changed.
+ */
+public class ScheduleRepository implements ScheduleSource {
+
+    private static final String TAG = MainActivity.TAG + "." + ScheduleRepository.class.getSimpleName();
+
+    // PlantSchedules are loaded this many at a time
+    private static final int PAGE_SIZE = 50;
+    // how many rows before and after the visible rows are loaded ahead of time
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE;
+    // pages more than this many rows from the visible rows are dropped
+    private static final int KEEP_DISTANCE = PAGE_SIZE * 4;
+
+    /**
+     * Receives changes to the repository's PlantSchedules, on the main thread
+     */
+    public interface Observer {
+        // the number of PlantSchedules is known, and every row was replaced
+        void onLoaded();
+
+        // a range of rows was loaded, and can be shown
+        void onRangeLoaded(int position, int count);
+
+        void onChanged(int position);
+
+        void onInserted(int position);
+
+        void onRemoved(int position);
+    }
+
+    private static ScheduleRepository instance;
+
+    private final ScheduleWriter writer;
+    private final ScheduleStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Observer> observers = new ArrayList<>();
+
+    // the loaded pages by page number, each one holds every row of its page
+    private final SparseArray<ScheduleTable> pages = new SparseArray<>();
+    private final SparseBooleanArray loadingPages = new SparseBooleanArray();
+    // the ScheduleWriter sequence number of the user's latest change to each row, by id
+    private final LongSparseArray<Long> changedAt = new LongSparseArray<>();
+    // counts the changes that move rows to new positions, pages read before one are out of place
+    private int structureVersion = 0;
+
+    private int order = ScheduleStore.ORDER_ADDED;
+    // the day the rows were ordered for
+    private int day = PlantSchedule.today();
+    private final Runnable dayChangeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            checkDay();
+        }
+    };
+
+    private int size = 0;
+    private int firstVisible = 0;
+    private int lastVisible = -1;
+    private boolean loading = false;
+    private boolean loaded = false;
+
+    private ScheduleRepository(Context context) {
+        this.writer = ScheduleWriter.getInstance(context);
+        this.store = ScheduleStore.getInstance(context);
+    }
+
+    public static ScheduleRepository getInstance(Context context) {
+        checkMainThread();
+        if (instance == null) {
+            instance = new ScheduleRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Count the PlantSchedules and load the first page in the background, if they have not been loaded already
+     * Observers are told with onLoaded once they are
+     */
+    public void load() {
+        if (loading || loaded) {
+            return;
+        }
+        loading = true;
+
+        day = PlantSchedule.today();
+        final int loadDay = day;
+        final int loadOrder = order;
+        final int version = structureVersion;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                store.rollForward(loadDay);
+                final int count = store.count();
+                final ScheduleTable firstPage = store.loadPage(loadOrder, 0, PAGE_SIZE);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        size = count;
+                        // the order may have changed while the first page was read
+                        if (version == structureVersion) {
+                            pages.put(0, firstPage);
+                        }
+                        loading = false;
+                        loaded = true;
+                        Log.i(TAG, "Loaded " + firstPage.size() + " of " + count + " schedules");
+
+                        for (Observer observer : new ArrayList<>(observers)) {
+                            observer.onLoaded();
+                        }
+                        loadVisiblePages();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Count and load the PlantSchedules again, after they were changed in the ScheduleStore directly,
+     * such as by an import. Observers are told with onLoaded once they are.
+     */
+    public void refresh() {
+        if (!loaded) {
+            return;
+        }
+        loaded = false;
+        reload();
+        load();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the number of PlantSchedules, loaded or not
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the order of the PlantSchedules, one of the ScheduleStore orders
+     */
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Order the PlantSchedules another way, every row is replaced
+     *
+     * @param newOrder ORDER_ADDED, ORDER_NEXT_DUE or ORDER_INTERVAL from the ScheduleStore
+     */
+    public void setOrder(int newOrder) {
+        if (newOrder == order) {
+            return;
+        }
+        Log.i(TAG, "Ordering schedules by " + newOrder);
+        order = newOrder;
+        reload();
+    }
+
+    /**
+     * Move the rows whose next watering day has passed, if the day has changed since they were ordered
+     * This happens at the start of each day while there are Observers, but the device may have slept through it
+     */
+    public void checkDay() {
+        int today = PlantSchedule.today();
+        scheduleDayChange(today);
+        if (today == day || !loaded) {
+            return;
+        }
+        day = today;
+
+        final int rollDay = today;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int rolled = store.rollForward(rollDay);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // pages read before the rows were moved are dropped by the reload
+                        if (rolled > 0 && order == ScheduleStore.ORDER_NEXT_DUE) {
+                            reload();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Get a PlantSchedule if its page is loaded, otherwise start loading it
+     *
+     * @param position the PlantSchedule's position
+     * @return a view of the PlantSchedule, only valid until the next change, or null if it is not loaded
+     */
+    @Override
+    public PlantSchedule get(int position) {
+        ScheduleTable page = pages.get(position / PAGE_SIZE);
+        if (page == null) {
+            loadPage(position / PAGE_SIZE);
+            return null;
+        }
+        return page.get(position % PAGE_SIZE);
+    }
+
+    /**
+     * @param id a PlantSchedule's id
+     * @return the PlantSchedule's position, or -1 if it is not loaded
+     */
+    @Override
+    public int indexOf(long id) {
+        // only pages in the order the rows were added have ascending ids to search
+        boolean sorted = order == ScheduleStore.ORDER_ADDED;
+        for (int i = 0; i < pages.size(); ++i) {
+            ScheduleTable page = pages.valueAt(i);
+            int index = sorted ? page.indexOfId(id) : page.scanForId(id);
+            if (index >= 0) {
+                return pages.keyAt(i) * PAGE_SIZE + index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tell the repository which rows are visible, so the pages around them are loaded and the rest dropped
+     *
+     * @param first the first visible position
+     * @param last the last visible position
+     */
+    public void setVisibleRange(int first, int last) {
+        firstVisible = first;
+        lastVisible = last;
+        if (!loaded) {
+            return;
+        }
+
+        // every change to a row is recorded with the ScheduleWriter as it is made, so a page can be dropped any time
+        int firstKept = Math.max(first - KEEP_DISTANCE, 0) / PAGE_SIZE;
+        int lastKept = (last + KEEP_DISTANCE) / PAGE_SIZE;
+        for (int i = pages.size() - 1; i >= 0; --i) {
+            if (pages.keyAt(i) < firstKept || pages.keyAt(i) > lastKept) {
+                pages.removeAt(i);
+            }
+        }
+        loadVisiblePages();
+    }
+
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+        if (observers.size() == 1) {
+            scheduleDayChange(PlantSchedule.today());
+        }
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+        if (observers.isEmpty()) {
+            mainHandler.removeCallbacks(dayChangeRunnable);
+        }
+    }
+
+    /**
+     * Add a new PlantSchedule to the end of the list
+     */
+    public void add(PlantSchedule sched) {
+        // saving gives the PlantSchedule an id after every other id, so it belongs at the end
+        long sequence = writer.save(sched);
+        changedAt.put(sched.getId(), sequence);
+
+        if (order != ScheduleStore.ORDER_ADDED) {
+            // the row's position is only known to the index
+            ++size;
+            reload();
+            return;
+        }
+
+        int position = size;
+        ScheduleTable page = pages.get(position / PAGE_SIZE);
+        if (page != null) {
+            page.add(sched);
+        } else if (position % PAGE_SIZE == 0) {
+            // the row starts a new page, which is complete with only the row
+            page = new ScheduleTable();
+            page.add(sched);
+            pages.put(position / PAGE_SIZE, page);
+        }
+        ++size;
+        ++structureVersion;
+
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onInserted(position);
+        }
+    }
+
+    /**
+     * Replace a PlantSchedule, keeping the replaced PlantSchedule's id
+     *
+     * @param id the id of the PlantSchedule to replace
+     * @param sched the new PlantSchedule
+     */
+    public void replace(long id, PlantSchedule sched) {
+        sched.setId(id);
+        changedAt.put(id, writer.save(sched));
+
+        int position = indexOf(id);
+        if (order != ScheduleStore.ORDER_ADDED
+                && (position < 0 || orderKey(get(position)) != orderKey(sched))) {
+            // the row may have moved, into or out of the loaded pages
+            reload();
+        } else if (position >= 0) {
+            pages.get(position / PAGE_SIZE).set(position % PAGE_SIZE, sched);
+            notifyChanged(position);
+        }
+    }
+
+    /**
+     * Remove a PlantSchedule
+     *
+     * @param id the id of the PlantSchedule to remove
+     */
+    public void remove(long id) {
+        int position = indexOf(id);
+        writer.delete(id);
+        changedAt.remove(id);
+        --size;
+        ++structureVersion;
+
+        if (position < 0) {
+            // the row's position is not known, so the loaded pages may be out of place
+            reload();
+            return;
+        }
+
+        // every later row moves back one position, so each page gives its first row to the one before
+        int pageNumber = position / PAGE_SIZE;
+        pages.get(pageNumber).remove(position % PAGE_SIZE);
+        int oldLastPage = size / PAGE_SIZE;
+        for (int i = pageNumber + 1; i <= oldLastPage; ++i) {
+            ScheduleTable page = pages.get(i);
+            ScheduleTable previousPage = pages.get(i - 1);
+            if (page == null) {
+                if (previousPage != null) {
+                    // the previous page is missing the row this page would have given it
+                    pages.remove(i - 1);
+                }
+                continue;
+            }
+            PlantSchedule moved = page.remove(0);
+            if (previousPage != null) {
+                previousPage.add(moved);
+            }
+        }
+        if (size % PAGE_SIZE == 0) {
+            // the last page gave up its only row
+            pages.remove(oldLastPage);
+        }
+
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onRemoved(position);
+        }
+        loadVisiblePages();
+    }
+
+    /**
+     * Mark whether a PlantSchedule needs water, after the user toggles it
+     *
+     * @param position the position of a loaded PlantSchedule
+     * @param water whether the plant needs water
+     */
+    @Override
+    public void setWaterToday(int position, boolean water) {
+        PlantSchedule sched = get(position);
+        if (sched == null || sched.getWaterToday() == water) {
+            return;
+        }
+        sched.setWaterToday(water);
+        changedAt.put(sched.getId(), writer.saveState(sched));
+        notifyChanged(position);
+    }
+
+    /**
+     * Save whether a PlantSchedule needs water, after the user toggles it somewhere other than the list,
+     * such as in the results of a ScheduleSearch. Its row is updated if it is loaded.
+     *
+     * @param sched the PlantSchedule, with its new waterToday
+     */
+    public void saveState(PlantSchedule sched) {
+        changedAt.put(sched.getId(), writer.saveState(sched));
+
+        int position = indexOf(sched.getId());
+        if (position >= 0) {
+            PlantSchedule row = get(position);
+            if (row.getWaterToday() != sched.getWaterToday()) {
+                row.setWaterToday(sched.getWaterToday());
+                notifyChanged(position);
+            }
+        }
+    }
+
+    /**
+     * Start writing every change now, instead of waiting to coalesce it with later changes
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Update the loaded PlantSchedules with changes already written to the ScheduleStore by someone else,
+     * such as the NotificationJobService. Rows the user has changed since are left alone, and rows that
+     * are not loaded already have the changes when they are read.
+     *
+     * Must be called with a Runnable posted from the ScheduleWriter's thread after the changes were
+     * written, so a page that was read before they were has already been delivered
+     *
+     * @param storedList the stored PlantSchedules, each one replaces the row with the same id
+     * @param sequence the ScheduleWriter's written sequence number when the changes were made,
+     *                 rows the user changed after it are newer than the stored changes
+     */
+    public void applyStored(List<PlantSchedule> storedList, long sequence) {
+        if (!loaded) {
+            // a load that has not been delivered yet ran after the changes, and already has them
+            return;
+        }
+
+        int applied = 0;
+        boolean moved = false;
+        for (PlantSchedule stored : storedList) {
+            int position = indexOf(stored.getId());
+            if (position < 0 || changedAt.get(stored.getId(), 0L) > sequence) {
+                continue;
+            }
+            ScheduleTable page = pages.get(position / PAGE_SIZE);
+            int index = position % PAGE_SIZE;
+            moved |= orderKey(page.get(index)) != orderKey(stored);
+            page.set(index, new PlantSchedule(stored.getId(), page.getName(index),
+                    stored.getRefDay(), stored.getWaterInterval(), stored.getWaterToday()));
+            notifyChanged(position);
+            ++applied;
+        }
+        if (moved) {
+            reload();
+        }
+        Log.i(TAG, "Applied " + applied + " of " + storedList.size() + " stored changes");
+    }
+
+    /*
+     * Drops every loaded page, tells the Observers every row was replaced, and loads the visible pages again
+     */
+    private void reload() {
+        ++structureVersion;
+        pages.clear();
+        if (!loaded) {
+            return;
+        }
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onLoaded();
+        }
+        loadVisiblePages();
+    }
+
+    /*
+     * The value a PlantSchedule is ordered by, before its id
+     */
+    private int orderKey(PlantSchedule sched) {
+        switch (order) {
+            case ScheduleStore.ORDER_NEXT_DUE:
+                return sched.getNextWateringDay(day);
+            case ScheduleStore.ORDER_INTERVAL:
+                return sched.getWaterInterval();
+            default:
+                return 0;
+        }
+    }
+
+    private void scheduleDayChange(int today) {
+        mainHandler.removeCallbacks(dayChangeRunnable);
+        if (!observers.isEmpty()) {
+            mainHandler.postDelayed(dayChangeRunnable,
+                    Math.max(PlantSchedule.getStartOfDay(today + 1) - Clock.getInstance().currentTimeMillis(), 0));
+        }
+    }
+
+    /*
+     * Loads every missing page near the visible rows
+     */
+    private void loadVisiblePages() {
+        if (size == 0 || lastVisible < firstVisible) {
+            return;
+        }
+        int firstPage = Math.max(firstVisible - PREFETCH_DISTANCE, 0) / PAGE_SIZE;
+        int lastPage = Math.min(lastVisible + PREFETCH_DISTANCE, size - 1) / PAGE_SIZE;
+        for (int i = firstPage; i <= lastPage; ++i) {
+            if (pages.get(i) == null) {
+                loadPage(i);
+            }
+        }
+    }
+
+    /*
+     * Loads a page in the background, unless it is already being loaded
+     */
+    private void loadPage(final int pageNumber) {
+        if (!loaded || loadingPages.get(pageNumber)) {
+            return;
+        }
+        loadingPages.put(pageNumber, true);
+
+        final int version = structureVersion;
+        final int pageOrder = order;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ScheduleTable page = store.loadPage(pageOrder, pageNumber * PAGE_SIZE, PAGE_SIZE);
+                // every change up to this one was written before the page was read
+                final long sequence = writer.getWrittenSequence();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(pageNumber, page, version, sequence);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int pageNumber, ScheduleTable page, int version, long sequence) {
+        loadingPages.delete(pageNumber);
+
+        // the page is out of date if rows have moved, or the user changed one of them, since it was read
+        boolean current = version == structureVersion;
+        for (int i = 0; current && i < page.size(); ++i) {
+            current = changedAt.get(page.getId(i), 0L) <= sequence;
+        }
+        if (!current) {
+            // read it again, if it is still wanted
+            loadVisiblePages();
+            return;
+        }
+
+        pages.put(pageNumber, page);
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onRangeLoaded(pageNumber * PAGE_SIZE, page.size());
+        }
+    }
+
+    private void notifyChanged(int position) {
+        for (Observer observer : new ArrayList<>(observers)) {
+            observer.onChanged(position);
+        }
+    }
+
+    private static void checkMainThread() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("ScheduleRepository must be used on the main thread");
+        }
+    }
+}
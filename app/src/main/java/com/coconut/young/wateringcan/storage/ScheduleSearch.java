@@ -0,0 +1,246 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+
+/**
+ * Finds the PlantSchedules whose name starts with a query, ignoring case, as the user types it
+ *
+ * The results are read from the name index of the ScheduleStore a chunk at a time, in name order, and each
+ * chunk is shown as soon as it is read, so the first results do not wait for the rest. A new query cancels
+ * the chunks of the previous one. When the new query only adds to the end of a query whose results were
+ * all read, the results are narrowed down in memory instead.
+ *
+ * The search observes the ScheduleRepository, so its results stay current as PlantSchedules are added,
+ * edited and removed. It is only used on the main thread.
+ */
+public class ScheduleSearch implements ScheduleSource, ScheduleRepository.Observer {
+
+    private static final String TAG = MainActivity.TAG + "." + ScheduleSearch.class.getSimpleName();
+
+    // results are read this many at a time
+    private static final int CHUNK_SIZE = 100;
+
+    /**
+     * Receives changes to the results, on the main thread
+     */
+    public interface Listener {
+        // every result was replaced
+        void onResultsReset();
+
+        void onResultsAdded(int position, int count);
+
+        void onResultChanged(int position);
+    }
+
+    private final ScheduleRepository repository;
+    private final ScheduleWriter writer;
+    private final ScheduleStore store;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private String query = "";
+    private ScheduleTable results = new ScheduleTable();
+    // whether every result of the query has been read
+    private boolean complete = true;
+    // counts the searches, chunks read for an earlier one are dropped
+    private int version = 0;
+
+    public ScheduleSearch(Context context, Listener listener) {
+        this.repository = ScheduleRepository.getInstance(context);
+        this.writer = ScheduleWriter.getInstance(context);
+        this.store = ScheduleStore.getInstance(context);
+        this.listener = listener;
+    }
+
+    /**
+     * Search for the PlantSchedules whose name starts with the query
+     *
+     * @param newQuery the start of the names to find, an empty query finds nothing
+     */
+    public void search(String newQuery) {
+        String previous = query;
+        query = newQuery;
+        ++version;
+
+        if (complete && !previous.isEmpty() && startsWith(newQuery, previous)) {
+            // every result of the new query is already a result of the previous one
+            ScheduleTable narrowed = new ScheduleTable(results.size());
+            for (int i = 0; i < results.size(); ++i) {
+                if (startsWith(results.getName(i), newQuery)) {
+                    narrowed.add(results.get(i));
+                }
+            }
+            results = narrowed;
+            listener.onResultsReset();
+            return;
+        }
+
+        results = new ScheduleTable();
+        complete = newQuery.isEmpty();
+        listener.onResultsReset();
+        if (!complete) {
+            readChunk(version, newQuery, null, PlantSchedule.NO_ID);
+        }
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    @Override
+    public int size() {
+        return results.size();
+    }
+
+    @Override
+    public int getOrder() {
+        return ScheduleStore.ORDER_NAME;
+    }
+
+    @Override
+    public PlantSchedule get(int position) {
+        return results.get(position);
+    }
+
+    // the results are in name order, so their ids are not sorted
+    @Override
+    public int indexOf(long id) {
+        return results.scanForId(id);
+    }
+
+    @Override
+    public void setWaterToday(int position, boolean water) {
+        PlantSchedule sched = results.get(position);
+        if (sched.getWaterToday() == water) {
+            return;
+        }
+        sched.setWaterToday(water);
+        listener.onResultChanged(position);
+        repository.saveState(sched);
+    }
+
+    /*
+     * Reads the next chunk of results in the background, after the last result read so far
+     */
+    private void readChunk(final int searchVersion, final String prefix, final String afterName, final long afterId) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ScheduleTable chunk = store.searchNames(prefix, afterName, afterId, CHUNK_SIZE);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onChunkRead(searchVersion, chunk);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onChunkRead(int searchVersion, ScheduleTable chunk) {
+        if (searchVersion != version) {
+            // the query changed, or the results went out of date, while the chunk was read
+            return;
+        }
+
+        int position = results.size();
+        results.ensureCapacity(position + chunk.size());
+        for (int i = 0; i < chunk.size(); ++i) {
+            results.add(chunk.get(i));
+        }
+        listener.onResultsAdded(position, chunk.size());
+
+        if (chunk.size() < CHUNK_SIZE) {
+            complete = true;
+            Log.i(TAG, "Found " + results.size() + " schedules for " + query);
+        } else {
+            int last = chunk.size() - 1;
+            readChunk(version, query, chunk.getName(last), chunk.getId(last));
+        }
+    }
+
+    /*
+     * Searches for the query again, when the PlantSchedules have changed in a way the results cannot follow
+     */
+    private void searchAgain() {
+        complete = false;
+        search(query);
+    }
+
+    @Override
+    public void onLoaded() {
+        searchAgain();
+    }
+
+    @Override
+    public void onRangeLoaded(int position, int count) {
+        // the rows were already stored, so the results have them
+    }
+
+    @Override
+    public void onChanged(int position) {
+        PlantSchedule sched = repository.get(position);
+        if (sched == null || query.isEmpty()) {
+            return;
+        }
+        int index = results.scanForId(sched.getId());
+        if (index < 0) {
+            if (startsWith(sched.getName(), query)) {
+                // the PlantSchedule was renamed into the results
+                searchAgain();
+            }
+        } else if (!sched.getName().equals(results.getName(index))) {
+            // the PlantSchedule may have moved, or left the results
+            searchAgain();
+        } else if (sched.getRefDay() != results.getRefDay(index)
+                || sched.getWaterInterval() != results.getWaterInterval(index)
+                || sched.getWaterToday() != results.getWaterToday(index)) {
+            results.set(index, sched);
+            listener.onResultChanged(index);
+        }
+    }
+
+    @Override
+    public void onInserted(int position) {
+        PlantSchedule sched = repository.get(position);
+        if (!query.isEmpty() && (sched == null || startsWith(sched.getName(), query))) {
+            searchAgain();
+        }
+    }
+
+    @Override
+    public void onRemoved(int position) {
+        // the removed PlantSchedule is gone, so it is not known if it was a result
+        if (!query.isEmpty()) {
+            searchAgain();
+        }
+    }
+
+    /*
+     * Compares the way the ScheduleStore's name index does, which only ignores the case of ASCII letters
+     *
+     * @return whether the name starts with the prefix
+     */
+    private static boolean startsWith(String name, String prefix) {
+        if (name.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); ++i) {
+            if (foldCase(name.charAt(i)) != foldCase(prefix.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char foldCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,37 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+
+/**
+ * A list of PlantSchedules the MainActivity can show, either every PlantSchedule or the results of a search
+ * Used only on the main thread
+ */
+public interface ScheduleSource {
+
+    int size();
+
+    /**
+     * @return how the PlantSchedules are ordered, one of the ScheduleStore orders
+     */
+    int getOrder();
+
+    /**
+     * @param position the PlantSchedule's position
+     * @return a view of the PlantSchedule, only valid until the next change, or null if it is not loaded yet
+     */
+    PlantSchedule get(int position);
+
+    /**
+     * @param id a PlantSchedule's id
+     * @return the PlantSchedule's position, or -1 if it is not loaded
+     */
+    int indexOf(long id);
+
+    /**
+     * Mark whether a PlantSchedule needs water, after the user toggles it
+     *
+     * @param position the position of a loaded PlantSchedule
+     * @param water whether the plant needs water
+     */
+    void setWaterToday(int position, boolean water);
+}
@@ -0,0 +1,937 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_ID;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_INTERVAL;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_KEY;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_NAME;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_NEXT_DUE;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_REF_DAY;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_VALUE;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.COLUMN_WATER;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.KEY_GENERATION;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.TABLE_METADATA;
+import static com.coconut.young.wateringcan.storage.ScheduleDatabase.TABLE_SCHEDULES;
+
+/**
+ * Persistent storage for PlantSchedules, backed by one database row per PlantSchedule
+ * Only PlantSchedules that have changed since they were loaded are written back
+ *
+ * Each row also stores its next watering day, which is indexed so due PlantSchedules can be found
+ * without reading every row. Which PlantSchedules are due on each day is also summarized in a DueDigest,
+ * updated in memory with every write, so the due ones can be counted and listed without reading any rows.
+ * The DueDigest is stored in a file alongside the database only when the notification job uses it or it
+ * is rebuilt or moved to another day, since storing it costs as much as the number of rows. A stored
+ * DueDigest that missed later writes is stale by its generation, and is rebuilt when it is next read.
+ *
+ * Every public method may be called from any thread, calls are serialized on the store
+ *
+ * Rows can be read a page at a time, by position in one of several indexed orders, so the whole list
+ * never has to be held in memory
+ */
+public class ScheduleStore implements ScheduleDueIndex {
+
+    private static final String TAG = MainActivity.TAG + "." + ScheduleStore.class.getSimpleName();
+
+    // the SharedPreferences key that PlantSchedules were stored in as one JSON string before the database
+    private static final String LEGACY_SCHEDULES = "savedSchedules";
+
+    private static final String DIGEST_FILE = "due_digest.bin";
+
+    // the orders PlantSchedules can be loaded in, each one is backed by an index
+    public static final int ORDER_ADDED = 0;
+    public static final int ORDER_NEXT_DUE = 1;
+    public static final int ORDER_INTERVAL = 2;
+    // the order of searchNames
+    public static final int ORDER_NAME = 3;
+
+    private static final String[] ALL_COLUMNS = {
+            COLUMN_ID, COLUMN_NAME, COLUMN_REF_DAY, COLUMN_INTERVAL, COLUMN_WATER };
+    // every column but the name, which is all the notification job needs, and the next watering day
+    private static final String[] DUE_COLUMNS = {
+            COLUMN_ID, COLUMN_REF_DAY, COLUMN_INTERVAL, COLUMN_WATER, COLUMN_NEXT_DUE };
+
+    private static ScheduleStore instance;
+
+    private final ScheduleDatabase database;
+    private final SharedPreferences sharedPref;
+    private final File digestFile;
+    private boolean opened = false;
+    private long generation;
+    // read from the digestFile the first time it is needed, null until then
+    private DueDigest digest;
+    // whether the digestFile holds the digest as it is now
+    private boolean digestStored = false;
+    // the next id allocateId gives out, NO_ID until the database is opened
+    private final AtomicLong nextId = new AtomicLong(PlantSchedule.NO_ID);
+
+    private ScheduleStore(Context context) {
+        this.database = new ScheduleDatabase(context);
+        this.sharedPref = context.getSharedPreferences(MainActivity.SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.digestFile = new File(context.getFilesDir(), DIGEST_FILE);
+    }
+
+    public static synchronized ScheduleStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ScheduleStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Load every stored PlantSchedule, in the order they were added
+     *
+     * @return the stored PlantSchedules
+     */
+    public synchronized ScheduleTable loadAll() {
+        final ScheduleTable table = new ScheduleTable();
+        forEach(new ScheduleVisitor() {
+            @Override
+            public void visit(PlantSchedule sched) {
+                table.add(sched);
+            }
+        });
+
+        Log.i(TAG, "Loaded " + table.size() + " schedules");
+        return table;
+    }
+
+    /**
+     * Load the stored PlantSchedules at a range of positions in an order, ties are in the order they were added
+     * The rows before the range are skipped in the order's index, without being decoded
+     *
+     * Ordered by their next watering day, PlantSchedules are only in place as of the last rollForward
+     *
+     * @param order ORDER_ADDED, ORDER_NEXT_DUE or ORDER_INTERVAL
+     * @param position the position of the first PlantSchedule to load
+     * @param count the most PlantSchedules to load
+     * @return the stored PlantSchedules, fewer than count if the range passes the last one
+     */
+    public synchronized ScheduleTable loadPage(int order, int position, int count) {
+        ScheduleTable table = new ScheduleTable(count);
+        Cursor cursor = getDatabase().query(TABLE_SCHEDULES, ALL_COLUMNS,
+                null, null, null, null, orderBy(order), position + "," + count);
+        try {
+            while (cursor.moveToNext()) {
+                table.add(cursor.getLong(0), cursor.getString(1),
+                        cursor.getInt(2), cursor.getInt(3), cursor.getInt(4) != 0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return table;
+    }
+
+    /**
+     * Load the stored PlantSchedules added after one, in the order they were added
+     * The rows are found by the primary key's index, so a change to earlier rows does not move them
+     *
+     * @param afterId the id of the last PlantSchedule already loaded, or NO_ID to start from the first
+     * @param count the most PlantSchedules to load
+     * @return the stored PlantSchedules, fewer than count if there are no more
+     */
+    public synchronized ScheduleTable loadAfter(long afterId, int count) {
+        ScheduleTable table = new ScheduleTable(count);
+        Cursor cursor = getDatabase().query(TABLE_SCHEDULES, ALL_COLUMNS, COLUMN_ID + " > ?",
+                new String[] { Long.toString(afterId) }, null, null, COLUMN_ID, Integer.toString(count));
+        try {
+            while (cursor.moveToNext()) {
+                table.add(cursor.getLong(0), cursor.getString(1),
+                        cursor.getInt(2), cursor.getInt(3), cursor.getInt(4) != 0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return table;
+    }
+
+    /**
+     * Load the stored PlantSchedules whose names start with a prefix, ignoring the case of ASCII letters,
+     * in the order of their names. Only the matching rows are read, through the index on the name.
+     *
+     * Results are read a chunk at a time, each chunk continuing after the last row of the one before
+     *
+     * @param prefix the start of the names to find
+     * @param afterName the name of the last row already read, or null to start from the first match
+     * @param afterId the id of the last row already read
+     * @param count the most PlantSchedules to load
+     * @return the matching PlantSchedules, fewer than count if there are no more
+     */
+    public synchronized ScheduleTable searchNames(String prefix, String afterName, long afterId, int count) {
+        StringBuilder selection = new StringBuilder(COLUMN_NAME).append(" >= ? COLLATE NOCASE");
+        List<String> args = new ArrayList<>(5);
+        args.add(prefix);
+
+        String end = prefixEnd(prefix);
+        if (end != null) {
+            selection.append(" AND ").append(COLUMN_NAME).append(" < ? COLLATE NOCASE");
+            args.add(end);
+        }
+        if (afterName != null) {
+            selection.append(" AND (").append(COLUMN_NAME).append(" > ? COLLATE NOCASE OR (")
+                    .append(COLUMN_NAME).append(" = ? COLLATE NOCASE AND ").append(COLUMN_ID).append(" > ?))");
+            args.add(afterName);
+            args.add(afterName);
+            args.add(Long.toString(afterId));
+        }
+
+        ScheduleTable table = new ScheduleTable(count);
+        Cursor cursor = getDatabase().query(TABLE_SCHEDULES, ALL_COLUMNS, selection.toString(),
+                args.toArray(new String[args.size()]), null, null,
+                orderBy(ORDER_NAME), Integer.toString(count));
+        try {
+            while (cursor.moveToNext()) {
+                table.add(cursor.getLong(0), cursor.getString(1),
+                        cursor.getInt(2), cursor.getInt(3), cursor.getInt(4) != 0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return table;
+    }
+
+    /**
+     * @return the number of stored PlantSchedules
+     */
+    public synchronized int count() {
+        return (int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE_SCHEDULES);
+    }
+
+    /**
+     * Pass every stored PlantSchedule to a ScheduleVisitor, in the order they were added
+     * Only one PlantSchedule is decoded at a time, so the whole list is never held in memory
+     *
+     * @param visitor the ScheduleVisitor to receive each PlantSchedule
+     */
+    public synchronized void forEach(ScheduleVisitor visitor) {
+        Cursor cursor = getDatabase().query(TABLE_SCHEDULES, ALL_COLUMNS,
+                null, null, null, null, COLUMN_ID);
+        try {
+            while (cursor.moveToNext()) {
+                visitor.visit(fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Pass every stored PlantSchedule that should be watered on a day to a ScheduleVisitor, in the order
+     * they were added. The due PlantSchedules are listed by the DueDigest, so no rows are read.
+     * Names are not decoded and every PlantSchedule's name is null
+     *
+     * The ScheduleVisitor may only change the reference date and waterToday
+     *
+     * @param day the day to find due PlantSchedules for, from PlantSchedule.today()
+     * @param visitor the ScheduleVisitor to receive each due PlantSchedule
+     * @param writeBack whether to store any changes the ScheduleVisitor makes to a PlantSchedule
+     * @return the number of PlantSchedules visited
+     */
+    public int forEachDue(int day, ScheduleVisitor visitor, boolean writeBack) {
+        return forEachDue(day, PlantSchedule.NO_ID, visitor, writeBack, null);
+    }
+
+    /**
+     * forEachDue, for a job run that may be stopped part way and resumed
+     * The stages of the run are timed, and if it is stopped, the PlantSchedules visited so far are stored
+     * and the rest are left for a later run
+     *
+     * @param afterId only visit PlantSchedules added after this one, or NO_ID to visit every due one
+     * @param run the JobRun to record the stages and the number of visited PlantSchedules in, or null
+     */
+    public synchronized int forEachDue(int day, long afterId, ScheduleVisitor visitor, boolean writeBack, JobRun run) {
+        beginStage(run);
+        ScheduleTable dueTable = getDigest(day).getDue(day, afterId);
+        endStage(run, JobRun.STAGE_LOAD);
+
+        beginStage(run);
+        List<PlantSchedule> changedList = new ArrayList<>();
+        // a stopped run keeps the PlantSchedules visited so far, the rest stay due
+        int visited = 0;
+        while (visited < dueTable.size() && (run == null || !run.isStopped())) {
+            PlantSchedule sched = dueTable.get(visited);
+            visitor.visit(sched);
+            if (writeBack && sched.isDirty()) {
+                changedList.add(sched);
+            }
+            ++visited;
+        }
+        endStage(run, JobRun.STAGE_EVALUATE);
+
+        beginStage(run);
+        if (!changedList.isEmpty()) {
+            writeStates(getDatabase(), day, changedList, new ArrayList<PlantSchedule>(0));
+        }
+        // the job runs a few times a day, so it keeps the stored digest current for the next process
+        if (!digestStored) {
+            writeDigest();
+        }
+        endStage(run, JobRun.STAGE_SAVE);
+
+        if (run != null) {
+            run.setDueCount(run.getDueCount() + visited);
+        }
+        Log.i(TAG, "Visited " + visited + " of " + dueTable.size() + " due schedules, " + changedList.size() + " changed");
+        return visited;
+    }
+
+    /**
+     * Find the first day, on or after a day, that any stored PlantSchedule should be watered
+     * The day is found from the DueDigest, without reading any rows
+     *
+     * @param day the first day to consider, from PlantSchedule.today()
+     * @return the first watering day, or NOTHING_DUE if there are no stored PlantSchedules
+     */
+    @Override
+    public synchronized int getNextDueDay(int day) {
+        return getDigest(day).getNextDueDay(day);
+    }
+
+    /**
+     * @param day the day to check, from PlantSchedule.today()
+     * @return whether any PlantSchedule that should be watered on the day is still marked as needing water
+     */
+    @Override
+    public synchronized boolean hasUnwatered(int day) {
+        return getDigest(day).countMarkedDue(day) > 0;
+    }
+
+    /**
+     * @param day the day to count for, from PlantSchedule.today()
+     * @return the number of PlantSchedules that should be watered on the day and are still marked as needing water
+     */
+    public synchronized int countUnwatered(int day) {
+        return getDigest(day).countMarkedDue(day);
+    }
+
+    /**
+     * Load the first PlantSchedules, in the order they were added, that should be watered on a day and
+     * are still marked as needing water. They are found from the DueDigest, only the loaded rows are read.
+     *
+     * @param day the day to find PlantSchedules for, from PlantSchedule.today()
+     * @param count the most PlantSchedules to load
+     * @return the unwatered PlantSchedules, fewer than count if there are no more
+     */
+    public synchronized ScheduleTable loadUnwatered(int day, int count) {
+        ScheduleTable dueTable = getDigest(day).getDue(day, PlantSchedule.NO_ID);
+        ScheduleTable table = new ScheduleTable(count);
+        for (int i = 0; i < dueTable.size() && table.size() < count; ++i) {
+            if (dueTable.getWaterToday(i)) {
+                PlantSchedule sched = get(dueTable.getId(i));
+                if (sched != null) {
+                    table.add(sched);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Mark stored PlantSchedules as watered, writing only the rows that change and only their state
+     * Marking every due PlantSchedule reads no rows, they are found from the DueDigest
+     *
+     * @param day the current day, from PlantSchedule.today()
+     * @param id the PlantSchedule to mark, or NO_ID to mark every one that should be watered on the day
+     * @return the PlantSchedules that changed, whose names are null
+     */
+    public synchronized List<PlantSchedule> markWatered(int day, long id) {
+        SQLiteDatabase db = getDatabase();
+        List<PlantSchedule> candidates = new ArrayList<>();
+        if (id == PlantSchedule.NO_ID) {
+            candidates.addAll(getDigest(day).getDue(day, PlantSchedule.NO_ID));
+        } else {
+            Cursor cursor = db.query(TABLE_SCHEDULES, DUE_COLUMNS, COLUMN_ID + " = ?",
+                    new String[] { Long.toString(id) }, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    candidates.add(stateFromCursor(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        List<PlantSchedule> changedList = new ArrayList<>();
+        for (PlantSchedule sched : candidates) {
+            if (sched.getWaterToday()) {
+                sched.setWaterToday(false);
+                changedList.add(sched);
+            }
+        }
+        if (!changedList.isEmpty()) {
+            writeStates(db, day, changedList, new ArrayList<PlantSchedule>(0));
+        }
+        Log.i(TAG, "Marked " + changedList.size() + " schedules as watered");
+        return changedList;
+    }
+
+    /**
+     * Move every stored PlantSchedule whose next watering day has passed to its next one in the index,
+     * so they are in order by their next watering day. Only the rows that have passed are read.
+     *
+     * @param day the current day, from PlantSchedule.today()
+     * @return the number of PlantSchedules moved
+     */
+    public synchronized int rollForward(int day) {
+        SQLiteDatabase db = getDatabase();
+
+        // the rows are read before any are written, so updates do not move rows under the cursor
+        List<PlantSchedule> rolledList = new ArrayList<>();
+        Cursor cursor = db.query(TABLE_SCHEDULES, DUE_COLUMNS, COLUMN_NEXT_DUE + " < ?",
+                new String[] { Integer.toString(day) }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                rolledList.add(stateFromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (!rolledList.isEmpty()) {
+            writeStates(db, day, new ArrayList<PlantSchedule>(0), rolledList);
+            Log.i(TAG, "Rolled " + rolledList.size() + " schedules forward to " + day);
+        }
+        return rolledList.size();
+    }
+
+    /**
+     * Choose the id for a new PlantSchedule before it is stored, so it can be saved on another thread
+     * Ids are never reused and always increase, so PlantSchedules stay in the order they were added
+     *
+     * @return the id to give the PlantSchedule
+     */
+    public long allocateId() {
+        if (nextId.get() == PlantSchedule.NO_ID) {
+            getDatabase();
+        }
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Load a single stored PlantSchedule
+     *
+     * @param id the id of the PlantSchedule
+     * @return the PlantSchedule, or null if there is none with that id
+     */
+    public synchronized PlantSchedule get(long id) {
+        Cursor cursor = getDatabase().query(TABLE_SCHEDULES, ALL_COLUMNS,
+                COLUMN_ID + " = ?", new String[] { Long.toString(id) }, null, null, null);
+        try {
+            return cursor.moveToFirst() ? fromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write a single PlantSchedule, inserting it if it has never been stored
+     *
+     * @param sched the PlantSchedule to store
+     */
+    public synchronized void save(PlantSchedule sched) {
+        List<PlantSchedule> single = new ArrayList<>(1);
+        single.add(sched);
+        saveAll(single);
+    }
+
+    /**
+     * Write every PlantSchedule in the list that is new or has changed, in one transaction
+     *
+     * @param scheduleList the PlantSchedules to check for changes
+     * @return the number of PlantSchedules written
+     */
+    public synchronized int saveChanged(List<PlantSchedule> scheduleList) {
+        return writeList(scheduleList, false);
+    }
+
+    /**
+     * Write every PlantSchedule in the list, changed or not, in one transaction
+     *
+     * @param scheduleList the PlantSchedules to store
+     * @return the number of PlantSchedules written
+     */
+    public synchronized int saveAll(List<PlantSchedule> scheduleList) {
+        return writeList(scheduleList, true);
+    }
+
+    /**
+     * Insert new PlantSchedules in one transaction, such as a batch of imported ones
+     * Each one is given an id from allocateId, so it is added after every PlantSchedule saved so far,
+     * including those the ScheduleWriter has not written yet
+     *
+     * @param scheduleList the new PlantSchedules, without ids
+     */
+    public synchronized void insertAll(List<PlantSchedule> scheduleList) {
+        SQLiteDatabase db = getDatabase();
+        long nextGeneration;
+
+        invalidateDigest();
+        db.beginTransaction();
+        try {
+            for (PlantSchedule sched : scheduleList) {
+                sched.setId(allocateId());
+                ContentValues values = valuesOf(sched);
+                values.put(COLUMN_ID, sched.getId());
+                insert(db, values);
+                putDigest(sched);
+                sched.markClean();
+            }
+            nextGeneration = writeGeneration(db, generation + 1);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        generation = nextGeneration;
+        saveDigest();
+    }
+
+    /**
+     * @return a count of the changes to the stored PlantSchedules, which changes whenever one is
+     *          added, removed or changed, but not when it is only rolled forward in the index
+     */
+    public synchronized long getGeneration() {
+        getDatabase();
+        return generation;
+    }
+
+    /**
+     * Remove a stored PlantSchedule
+     *
+     * @param id the id of the PlantSchedule to remove
+     */
+    public synchronized void delete(long id) {
+        if (id == PlantSchedule.NO_ID) {
+            return;
+        }
+
+        List<Long> single = new ArrayList<>(1);
+        single.add(id);
+        applyChanges(single, new ArrayList<PlantSchedule>(0), new ArrayList<PlantSchedule>(0));
+    }
+
+    /**
+     * Write a batch of removals, whole rows and states in one transaction, such as the changes
+     * the ScheduleWriter coalesced. The removals are applied first, then the rows, then the states.
+     *
+     * @param deletes the ids of the PlantSchedules to remove
+     * @param rows the PlantSchedules to store whole, inserting any that have never been stored
+     * @param states the PlantSchedules to store only the reference date and waterToday of,
+     *               every one must already be stored
+     */
+    public synchronized void applyChanges(List<Long> deletes, List<PlantSchedule> rows, List<PlantSchedule> states) {
+        if (deletes.isEmpty() && rows.isEmpty() && states.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = getDatabase();
+        int today = PlantSchedule.today();
+        long nextGeneration;
+        invalidateDigest();
+        db.beginTransaction();
+        try {
+            for (long id : deletes) {
+                db.delete(TABLE_SCHEDULES, COLUMN_ID + " = ?", new String[] { Long.toString(id) });
+                removeDigest(id);
+            }
+            for (PlantSchedule sched : rows) {
+                write(db, sched);
+                putDigest(sched);
+            }
+            for (PlantSchedule sched : states) {
+                writeState(db, sched, today);
+                putDigest(sched);
+            }
+            nextGeneration = writeGeneration(db, generation + 1);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        generation = nextGeneration;
+        saveDigest();
+    }
+
+    /*
+     * Writes the PlantSchedules in one transaction, all of them or only the new and changed ones
+     */
+    private int writeList(List<PlantSchedule> scheduleList, boolean all) {
+        List<PlantSchedule> changedList = new ArrayList<>();
+        for (PlantSchedule sched : scheduleList) {
+            if (all || sched.getId() == PlantSchedule.NO_ID || sched.isDirty()) {
+                changedList.add(sched);
+            }
+        }
+        // nothing changed, so the generation and the digest stay as they are
+        if (changedList.isEmpty()) {
+            Log.i(TAG, "Saved 0 of " + scheduleList.size() + " schedules");
+            return 0;
+        }
+
+        SQLiteDatabase db = getDatabase();
+        long nextGeneration;
+        invalidateDigest();
+        db.beginTransaction();
+        try {
+            for (PlantSchedule sched : changedList) {
+                write(db, sched);
+                putDigest(sched);
+            }
+            nextGeneration = writeGeneration(db, generation + 1);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        generation = nextGeneration;
+        saveDigest();
+
+        Log.i(TAG, "Saved " + changedList.size() + " of " + scheduleList.size() + " schedules");
+        return changedList.size();
+    }
+
+    private static void beginStage(JobRun run) {
+        if (run != null) {
+            run.beginStage();
+        }
+    }
+
+    private static void endStage(JobRun run, int stage) {
+        if (run != null) {
+            run.endStage(stage);
+        }
+    }
+
+    /*
+     * Stores the reference date, waterToday and next watering day of each changed PlantSchedule,
+     * and only the next watering day of each rolled PlantSchedule, in one transaction
+     */
+    private void writeStates(SQLiteDatabase db, int day,
+                             List<PlantSchedule> changedList, List<PlantSchedule> rolledList) {
+        long nextGeneration = generation;
+        if (!changedList.isEmpty()) {
+            invalidateDigest();
+        }
+        db.beginTransaction();
+        try {
+            for (PlantSchedule sched : changedList) {
+                writeState(db, sched, day);
+                putDigest(sched);
+            }
+            for (PlantSchedule sched : rolledList) {
+                writeNextDay(db, sched.getId(), sched.getNextWateringDay(day));
+            }
+            // the next watering day is derived from the rest of the row, so rolling a row does not change the generation
+            if (!changedList.isEmpty()) {
+                nextGeneration = writeGeneration(db, generation + 1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        generation = nextGeneration;
+        if (!changedList.isEmpty()) {
+            saveDigest();
+        }
+    }
+
+    private void write(SQLiteDatabase db, PlantSchedule sched) {
+        ContentValues values = valuesOf(sched);
+        if (sched.getId() == PlantSchedule.NO_ID) {
+            sched.setId(insert(db, values));
+        } else if (db.update(TABLE_SCHEDULES, values, COLUMN_ID + " = ?",
+                new String[] { Long.toString(sched.getId()) }) == 0) {
+            // the id was chosen by allocateId, and this is the first time the PlantSchedule is stored
+            values.put(COLUMN_ID, sched.getId());
+            insert(db, values);
+        }
+        sched.markClean();
+    }
+
+    private static ContentValues valuesOf(PlantSchedule sched) {
+        ContentValues values = new ContentValues(6);
+        values.put(COLUMN_NAME, sched.getName());
+        values.put(COLUMN_REF_DAY, sched.getRefDay());
+        values.put(COLUMN_INTERVAL, sched.getWaterInterval());
+        values.put(COLUMN_WATER, sched.getWaterToday() ? 1 : 0);
+        values.put(COLUMN_NEXT_DUE, sched.getNextWateringDay(PlantSchedule.today()));
+        return values;
+    }
+
+    private long insert(SQLiteDatabase db, ContentValues values) {
+        long id = db.insertOrThrow(TABLE_SCHEDULES, null, values);
+        // keep allocated ids ahead of every stored id
+        long next;
+        while ((next = nextId.get()) <= id) {
+            if (nextId.compareAndSet(next, id + 1)) {
+                break;
+            }
+        }
+        return id;
+    }
+
+    // writes only the columns the notification job and actions may change
+    private void writeState(SQLiteDatabase db, PlantSchedule sched, int day) {
+        ContentValues values = new ContentValues(3);
+        values.put(COLUMN_REF_DAY, sched.getRefDay());
+        values.put(COLUMN_WATER, sched.getWaterToday() ? 1 : 0);
+        values.put(COLUMN_NEXT_DUE, sched.getNextWateringDay(day));
+
+        db.update(TABLE_SCHEDULES, values, COLUMN_ID + " = ?",
+                new String[] { Long.toString(sched.getId()) });
+        sched.markClean();
+    }
+
+    private static void writeNextDay(SQLiteDatabase db, long id, int nextDay) {
+        ContentValues values = new ContentValues(1);
+        values.put(COLUMN_NEXT_DUE, nextDay);
+        db.update(TABLE_SCHEDULES, values, COLUMN_ID + " = ?", new String[] { Long.toString(id) });
+    }
+
+    private static long writeGeneration(SQLiteDatabase db, long newGeneration) {
+        ContentValues values = new ContentValues(1);
+        values.put(COLUMN_VALUE, newGeneration);
+        db.update(TABLE_METADATA, values, COLUMN_KEY + " = ?", new String[] { KEY_GENERATION });
+        return newGeneration;
+    }
+
+    /*
+     * The DueDigest, with its due counts starting at the day
+     * It is read from the digestFile the first time, and rebuilt from every row if it is missing or stale
+     */
+    private DueDigest getDigest(int day) {
+        SQLiteDatabase db = getDatabase();
+        if (digest == null) {
+            digest = readDigest();
+        }
+        // the PlantSchedules the digest moved forward past their reference day cannot be moved back
+        if (digest == null || digest.getGeneration() != generation || day < digest.getFirstDay()) {
+            digest = buildDigest(db, day);
+            writeDigest();
+        } else if (day != digest.getFirstDay()) {
+            digest.moveTo(day);
+            writeDigest();
+        }
+        return digest;
+    }
+
+    private DueDigest buildDigest(SQLiteDatabase db, int day) {
+        DueDigest built = new DueDigest(generation, day);
+        Cursor cursor = db.query(TABLE_SCHEDULES, DUE_COLUMNS, null, null, null, null, COLUMN_ID);
+        try {
+            while (cursor.moveToNext()) {
+                built.put(cursor.getLong(0), cursor.getInt(1), cursor.getInt(2), cursor.getInt(3) != 0);
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.i(TAG, "Built the due digest of " + built.size() + " schedules");
+        return built;
+    }
+
+    /*
+     * Marks the DueDigest stale before a write, so it is rebuilt if the write fails part way
+     */
+    private void invalidateDigest() {
+        if (digest != null) {
+            digest.setGeneration(DueDigest.NO_GENERATION);
+        }
+    }
+
+    private void putDigest(PlantSchedule sched) {
+        if (digest != null) {
+            digest.put(sched.getId(), sched.getRefDay(), sched.getWaterInterval(), sched.getWaterToday());
+            digestStored = false;
+        }
+    }
+
+    private void removeDigest(long id) {
+        if (digest != null) {
+            digest.remove(id);
+            digestStored = false;
+        }
+    }
+
+    /*
+     * Stamps the DueDigest with the generation of a finished write, it is stored later
+     * A digest that was never read is left in its file, where the generation shows it is stale
+     */
+    private void saveDigest() {
+        if (digest != null) {
+            digest.setGeneration(generation);
+        }
+    }
+
+    private DueDigest readDigest() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(digestFile)));
+            DueDigest read = DueDigest.read(in);
+            digestStored = true;
+            return read;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Exception reading the due digest", e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /*
+     * Writes the DueDigest to a temporary file first, so a failed write leaves the old one
+     */
+    private void writeDigest() {
+        File tempFile = new File(digestFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            digest.write(out);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(digestFile)) {
+                throw new IOException("Could not replace " + digestFile);
+            }
+            digestStored = true;
+        } catch (IOException e) {
+            // the stored generation no longer matches, so the digest is rebuilt when it is next read
+            Log.w(TAG, "Exception writing the due digest", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Exception closing the due digest", e);
+        }
+    }
+
+    /*
+     * The ORDER BY clause of an order, each one is served by an index that ends in the id
+     */
+    private static String orderBy(int order) {
+        switch (order) {
+            case ORDER_NEXT_DUE:
+                return COLUMN_NEXT_DUE + ", " + COLUMN_ID;
+            case ORDER_INTERVAL:
+                return COLUMN_INTERVAL + ", " + COLUMN_ID;
+            case ORDER_NAME:
+                return COLUMN_NAME + " COLLATE NOCASE, " + COLUMN_ID;
+            default:
+                return COLUMN_ID;
+        }
+    }
+
+    /*
+     * The first string after every string that starts with the prefix, or null if there is none
+     * NOCASE compares ASCII letters as lower case, so upper case letters are skipped over
+     */
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; --i) {
+            char last = prefix.charAt(i);
+            if (last >= 'A' && last <= 'Z') {
+                last = (char) (last + ('a' - 'A'));
+            }
+            if (last != Character.MAX_VALUE) {
+                char next = (char) (last + 1);
+                return prefix.substring(0, i) + (next == 'A' ? '[' : next);
+            }
+        }
+        return null;
+    }
+
+    private static PlantSchedule fromCursor(Cursor cursor) {
+        return new PlantSchedule(cursor.getLong(0), cursor.getString(1),
+                cursor.getInt(2), cursor.getInt(3), cursor.getInt(4) != 0);
+    }
+
+    private static PlantSchedule stateFromCursor(Cursor cursor) {
+        return new PlantSchedule(cursor.getLong(0), null,
+                cursor.getInt(1), cursor.getInt(2), cursor.getInt(3) != 0);
+    }
+
+    /*
+     * Opens the database, moving any PlantSchedules saved as a JSON string into it the first time
+     */
+    private synchronized SQLiteDatabase getDatabase() {
+        SQLiteDatabase db = database.getWritableDatabase();
+        if (!opened) {
+            generation = DatabaseUtils.longForQuery(db, "SELECT " + COLUMN_VALUE + " FROM "
+                    + TABLE_METADATA + " WHERE " + COLUMN_KEY + " = ?", new String[] { KEY_GENERATION });
+            // AUTOINCREMENT ids are never reused, so continue from the highest id ever given out
+            long lastId = Math.max(
+                    DatabaseUtils.longForQuery(db, "SELECT MAX(" + COLUMN_ID + ") FROM " + TABLE_SCHEDULES, null),
+                    DatabaseUtils.longForQuery(db, "SELECT MAX(seq) FROM sqlite_sequence WHERE name = ?",
+                            new String[] { TABLE_SCHEDULES }));
+            nextId.compareAndSet(PlantSchedule.NO_ID, lastId + 1);
+            migrateLegacySchedules(db);
+            opened = true;
+        }
+        return db;
+    }
+
+    /*
+     * Inserts the PlantSchedules stored at LEGACY_SCHEDULES, then removes the JSON string
+     */
+    private void migrateLegacySchedules(SQLiteDatabase db) {
+        String unformattedList = sharedPref.getString(LEGACY_SCHEDULES, null);
+        if (unformattedList == null) {
+            return;
+        }
+
+        int count = 0;
+        long nextGeneration;
+        ScheduleJsonReader reader = new ScheduleJsonReader(new StringReader(unformattedList));
+        db.beginTransaction();
+        try {
+            try {
+                PlantSchedule sched;
+                while ((sched = reader.read()) != null) {
+                    write(db, sched);
+                    ++count;
+                }
+            } catch (IOException e) {
+                // keep every PlantSchedule read before the malformed JSON
+                Log.e(TAG, "Exception migrating saved PlantSchedules", e);
+            }
+            nextGeneration = writeGeneration(db, generation + 1);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        generation = nextGeneration;
+        Log.i(TAG, "Migrated " + count + " schedules");
+
+        sharedPref.edit().remove(LEGACY_SCHEDULES).commit();
+    }
+}
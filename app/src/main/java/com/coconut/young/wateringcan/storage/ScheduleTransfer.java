@@ -0,0 +1,381 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+import com.coconut.young.wateringcan.utils.DateCodec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports and exports PlantSchedules as CSV or JSON files, chosen through the Storage Access Framework
+ *
+ * Files are streamed a PlantSchedule at a time on a background thread, so the whole file is never held
+ * in memory. Imported PlantSchedules are checked by the rules of ScheduleInput and inserted in large
+ * batches, each one in a single transaction. A transfer can be cancelled, it stops at the end of the
+ * current batch and keeps the batches already inserted.
+ *
+ * Each ScheduleTransfer runs one import or export. The running one is kept for the whole process, so an
+ * activity recreated by a configuration change can take over its Listener with getRunning and setListener.
+ */
+public class ScheduleTransfer {
+
+    private static final String TAG = MainActivity.TAG + "." + ScheduleTransfer.class.getSimpleName();
+
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSON = 1;
+
+    public static final String MIME_TYPE_CSV = "text/csv";
+    public static final String MIME_TYPE_JSON = "application/json";
+
+    // imported PlantSchedules are inserted this many at a time
+    private static final int BATCH_SIZE = 5000;
+    // exported PlantSchedules are read this many at a time
+    private static final int PAGE_SIZE = 1000;
+    // the longest an export waits for the changes the ScheduleWriter has not written yet
+    private static final long WRITE_TIMEOUT_IN_MILLIS = 2000;
+    // how far into an imported file to look for the start of a JSON array
+    private static final int SNIFF_LENGTH = 256;
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    // the transfer that started and has not told a Listener it finished, only used on the main thread
+    private static ScheduleTransfer running;
+
+    /**
+     * Receives the progress of a transfer, on the main thread
+     */
+    public interface Listener {
+        // the number of PlantSchedules transferred so far
+        void onProgress(int count);
+
+        /**
+         * @param count the number of PlantSchedules transferred
+         * @param skipped the number of invalid PlantSchedules an import skipped
+         * @param error what stopped the transfer, or null if it finished or was cancelled
+         */
+        void onFinished(int count, int skipped, IOException error);
+    }
+
+    private final ContentResolver resolver;
+    private final ScheduleStore store;
+    private final ScheduleWriter writer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelled = false;
+    private boolean importing = false;
+
+    // the Listener and what it was last told, only used on the main thread
+    private Listener listener;
+    private int progressCount = 0;
+    private boolean finished = false;
+    private int finishedCount;
+    private int finishedSkipped;
+    private IOException finishedError;
+
+    public ScheduleTransfer(Context context) {
+        // the transfer may outlive the activity that started it
+        Context appContext = context.getApplicationContext();
+        this.resolver = appContext.getContentResolver();
+        this.store = ScheduleStore.getInstance(appContext);
+        this.writer = ScheduleWriter.getInstance(appContext);
+    }
+
+    /**
+     * @return the import or export that is running, or finished without a Listener to tell, or null
+     */
+    public static ScheduleTransfer getRunning() {
+        return running;
+    }
+
+    /**
+     * Set the Listener to receive the progress, replacing any before it, or null to stop receiving it
+     * The Listener is told the progress so far at once, or that the transfer finished if it finished
+     * while there was no Listener
+     *
+     * @param listener the Listener, called on the main thread
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener == null) {
+            return;
+        }
+        if (finished) {
+            deliverFinished();
+        } else {
+            listener.onProgress(progressCount);
+        }
+    }
+
+    /**
+     * @return whether this transfer is an import, rather than an export
+     */
+    public boolean isImport() {
+        return importing;
+    }
+
+    /**
+     * Stop the transfer at the end of the current batch
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Add every valid PlantSchedule in a CSV or JSON file, after every stored one
+     * A file whose first character is '[' is read as JSON, any other file as CSV
+     *
+     * @param uri the file to import
+     */
+    public void startImport(final Uri uri) {
+        importing = true;
+        start(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                IOException error = null;
+                ScheduleReader reader = null;
+                List<PlantSchedule> batch = new ArrayList<>(BATCH_SIZE);
+                try {
+                    reader = openReader(uri);
+                    PlantSchedule sched;
+                    while (!cancelled && (sched = reader.read()) != null) {
+                        batch.add(sched);
+                        if (batch.size() == BATCH_SIZE) {
+                            count += insert(batch, count);
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Exception importing schedules", e);
+                    error = e;
+                } finally {
+                    close(reader);
+                }
+
+                // keep every PlantSchedule read before a malformed part of the file
+                if (!cancelled) {
+                    count += insert(batch, count);
+                }
+                int skipped = reader != null ? reader.getSkipped() : 0;
+                Log.i(TAG, "Imported " + count + " schedules, skipped " + skipped);
+                finish(count, skipped, error);
+            }
+        });
+    }
+
+    /**
+     * Write every stored PlantSchedule to a file, in the order they were added
+     *
+     * @param uri the file to export to, which is replaced
+     * @param format FORMAT_CSV or FORMAT_JSON
+     */
+    public void startExport(final Uri uri, final int format) {
+        start(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                IOException error = null;
+                Writer out = null;
+                try {
+                    // the export reads the ScheduleStore directly, so it only sees changes that were written
+                    if (!writer.awaitWrites(WRITE_TIMEOUT_IN_MILLIS)) {
+                        Log.w(TAG, "Pending changes not written before export");
+                    }
+
+                    OutputStream stream = resolver.openOutputStream(uri, "wt");
+                    if (stream == null) {
+                        throw new FileNotFoundException(uri.toString());
+                    }
+                    out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+                    count = export(out, format);
+                    out.flush();
+                } catch (IOException e) {
+                    Log.e(TAG, "Exception exporting schedules", e);
+                    error = e;
+                } finally {
+                    close(out);
+                }
+
+                Log.i(TAG, "Exported " + count + " schedules");
+                finish(count, 0, error);
+            }
+        });
+    }
+
+    private void start(final Runnable transfer) {
+        running = this;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                transfer.run();
+            }
+        }, "ScheduleTransfer");
+        thread.start();
+    }
+
+    /*
+     * Opens a file to import, as JSON if it starts with an array and as CSV otherwise
+     */
+    private ScheduleReader openReader(Uri uri) throws IOException {
+        InputStream stream = resolver.openInputStream(uri);
+        if (stream == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+
+        in.mark(1);
+        if (in.read() != BYTE_ORDER_MARK) {
+            in.reset();
+        }
+
+        in.mark(SNIFF_LENGTH);
+        int c;
+        int read = 0;
+        do {
+            c = in.read();
+        } while (++read < SNIFF_LENGTH && c != -1 && Character.isWhitespace(c));
+        in.reset();
+
+        return c == '[' ? new ScheduleJsonReader(in) : new ScheduleCsvReader(in);
+    }
+
+    /*
+     * Inserts a batch in one transaction and empties it
+     *
+     * @param count the number of PlantSchedules inserted before the batch
+     * @return the number of PlantSchedules inserted
+     */
+    private int insert(List<PlantSchedule> batch, int count) {
+        int inserted = batch.size();
+        if (inserted == 0) {
+            return 0;
+        }
+        store.insertAll(batch);
+        batch.clear();
+        progress(count + inserted);
+        return inserted;
+    }
+
+    /*
+     * Writes every stored PlantSchedule, a page at a time
+     *
+     * @return the number of PlantSchedules written
+     */
+    private int export(Writer out, int format) throws IOException {
+        JsonWriter json = null;
+        ScheduleCsvWriter csv = null;
+        if (format == FORMAT_JSON) {
+            json = new JsonWriter(out);
+            json.beginArray();
+        } else {
+            csv = new ScheduleCsvWriter(out);
+        }
+
+        int count = 0;
+        long lastId = PlantSchedule.NO_ID;
+        ScheduleTable page;
+        do {
+            // pages are read after the last id, so changes made during the export do not shift them
+            page = store.loadAfter(lastId, PAGE_SIZE);
+            for (int i = 0; i < page.size(); ++i) {
+                if (json != null) {
+                    writeJson(json, page, i);
+                } else {
+                    csv.write(page, i);
+                }
+            }
+            if (page.size() > 0) {
+                lastId = page.getId(page.size() - 1);
+                count += page.size();
+                progress(count);
+            }
+        } while (!cancelled && page.size() == PAGE_SIZE);
+
+        // a cancelled export is still a complete file, of the PlantSchedules written so far
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        } else {
+            csv.finish();
+        }
+        return count;
+    }
+
+    private static void writeJson(JsonWriter json, ScheduleTable page, int index) throws IOException {
+        json.beginObject()
+                .name("name").value(page.getName(index))
+                .name("date").value(DateCodec.formatDay(page.getRefDay(index)))
+                .name("interval").value(page.getWaterInterval(index))
+                .name("water").value(page.getWaterToday(index))
+                .endObject();
+    }
+
+    private void progress(final int count) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                progressCount = count;
+                if (listener != null) {
+                    listener.onProgress(count);
+                }
+            }
+        });
+    }
+
+    private void finish(final int count, final int skipped, final IOException error) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                finished = true;
+                finishedCount = count;
+                finishedSkipped = skipped;
+                finishedError = error;
+                if (listener != null) {
+                    deliverFinished();
+                }
+            }
+        });
+    }
+
+    private void deliverFinished() {
+        if (running == this) {
+            running = null;
+        }
+        listener.onFinished(finishedCount, finishedSkipped, finishedError);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Exception closing transferred file", e);
+        }
+    }
+}
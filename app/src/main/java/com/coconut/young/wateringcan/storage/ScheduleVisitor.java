@@ -0,0 +1,10 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+
+/**
+ * Receives stored PlantSchedules one at a time
+ */
+public interface ScheduleVisitor {
+    void visit(PlantSchedule sched);
+}
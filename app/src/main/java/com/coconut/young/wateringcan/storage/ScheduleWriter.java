@@ -0,0 +1,248 @@
+package com.coconut.young.wateringcan.storage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.coconut.young.wateringcan.MainActivity;
+import com.coconut.young.wateringcan.PlantSchedule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves all ScheduleStore reads and writes off the main thread, onto one background thread
+ *
+ * Changes are recorded on the main thread by copying the changed rows, and written together a short
+ * time later. Every change recorded before a write is coalesced into it, so a burst of edits or
+ * toggles is written in one transaction. Reads and other tasks run after every pending write.
+ */
+public class ScheduleWriter {
+
+    private static final String TAG = MainActivity.TAG + "." + ScheduleWriter.class.getSimpleName();
+
+    // how long changes are held before being written, so changes made close together share one write
+    private static final long WRITE_DELAY_IN_MILLIS = 500;
+
+    private static ScheduleWriter instance;
+
+    private final ScheduleStore store;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // pending changes, guarded by this
+    private final LongSparseArray<PlantSchedule> pendingRows = new LongSparseArray<>();
+    private final LongSparseArray<PlantSchedule> pendingStates = new LongSparseArray<>();
+    private final List<Long> pendingDeletes = new ArrayList<>();
+    private boolean writeScheduled = false;
+    // counts recorded changes, and the count that had been recorded when the last write started
+    private long sequence = 0;
+    private long writtenSequence = 0;
+
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    private ScheduleWriter(Context context) {
+        this.store = ScheduleStore.getInstance(context);
+
+        HandlerThread thread = new HandlerThread("ScheduleWriter", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized ScheduleWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new ScheduleWriter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Record a new or edited PlantSchedule to be written, the whole row is copied
+     * A new PlantSchedule is given its id immediately.
+     *
+     * @param sched the new or edited PlantSchedule
+     * @return the sequence number of the change
+     */
+    public long save(PlantSchedule sched) {
+        if (sched.getId() == PlantSchedule.NO_ID) {
+            sched.setId(store.allocateId());
+        }
+        PlantSchedule copy = copyOf(sched);
+
+        synchronized (this) {
+            // the whole row is newer than any pending state
+            pendingStates.remove(copy.getId());
+            pendingRows.put(copy.getId(), copy);
+            scheduleWrite();
+            return ++sequence;
+        }
+    }
+
+    /**
+     * Record a change to a stored PlantSchedule's reference date or waterToday to be written
+     *
+     * @param sched the changed PlantSchedule
+     * @return the sequence number of the change
+     */
+    public long saveState(PlantSchedule sched) {
+        if (sched.getId() == PlantSchedule.NO_ID) {
+            // never stored, it is written when it is saved
+            return getSequence();
+        }
+        PlantSchedule copy = copyOf(sched);
+
+        synchronized (this) {
+            PlantSchedule pendingRow = pendingRows.get(copy.getId());
+            if (pendingRow != null) {
+                // the whole row is waiting to be written, so write the new state with it
+                pendingRows.put(copy.getId(), new PlantSchedule(copy.getId(), pendingRow.getName(),
+                        copy.getRefDay(), pendingRow.getWaterInterval(), copy.getWaterToday()));
+            } else {
+                pendingStates.put(copy.getId(), copy);
+            }
+            scheduleWrite();
+            return ++sequence;
+        }
+    }
+
+    /**
+     * Record a stored PlantSchedule's removal to be written
+     *
+     * @param id the id of the removed PlantSchedule
+     * @return the sequence number of the change
+     */
+    public synchronized long delete(long id) {
+        if (id == PlantSchedule.NO_ID) {
+            return sequence;
+        }
+
+        pendingStates.remove(id);
+        pendingRows.remove(id);
+        pendingDeletes.add(id);
+        scheduleWrite();
+        return ++sequence;
+    }
+
+    /**
+     * @return the sequence number of the latest recorded change
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Changes are written in the order they are recorded, so every change with a sequence number up to
+     * this one has been written. A task run by execute sees every change up to the number when it starts.
+     *
+     * @return the sequence number of the latest change that has been written
+     */
+    public synchronized long getWrittenSequence() {
+        return writtenSequence;
+    }
+
+    /**
+     * Start writing every pending change now, without waiting for it to finish
+     */
+    public void flush() {
+        handler.removeCallbacks(writeRunnable);
+        handler.post(writeRunnable);
+    }
+
+    /**
+     * Wait for every pending change to be written, for use before the process may be killed
+     * The wait is usually over immediately, since changes are written shortly after they are made
+     *
+     * @param timeoutInMillis the longest time to wait
+     * @return whether every change was written in time
+     */
+    public boolean awaitWrites(long timeoutInMillis) {
+        final CountDownLatch written = new CountDownLatch(1);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                written.countDown();
+            }
+        });
+        try {
+            return written.await(timeoutInMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Run a task on the background thread, after every pending change is written
+     *
+     * @param task the task to run
+     */
+    public void execute(final Runnable task) {
+        handler.removeCallbacks(writeRunnable);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+                task.run();
+            }
+        });
+    }
+
+    // must hold the lock on this
+    private void scheduleWrite() {
+        if (!writeScheduled) {
+            writeScheduled = true;
+            handler.postDelayed(writeRunnable, WRITE_DELAY_IN_MILLIS);
+        }
+    }
+
+    /*
+     * Takes every pending change and writes it, on the background thread
+     */
+    private void writePending() {
+        List<PlantSchedule> rows;
+        List<PlantSchedule> states;
+        List<Long> deletes;
+        synchronized (this) {
+            writeScheduled = false;
+            writtenSequence = sequence;
+            if (pendingRows.size() == 0 && pendingStates.size() == 0 && pendingDeletes.isEmpty()) {
+                return;
+            }
+
+            rows = valuesOf(pendingRows);
+            pendingRows.clear();
+            states = valuesOf(pendingStates);
+            pendingStates.clear();
+            deletes = new ArrayList<>(pendingDeletes);
+            pendingDeletes.clear();
+        }
+
+        store.applyChanges(deletes, rows, states);
+        Log.i(TAG, "Wrote " + deletes.size() + " deletes, " + rows.size() + " rows and "
+                + states.size() + " states");
+    }
+
+    private static List<PlantSchedule> valuesOf(LongSparseArray<PlantSchedule> array) {
+        List<PlantSchedule> values = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); ++i) {
+            values.add(array.valueAt(i));
+        }
+        return values;
+    }
+
+    private static PlantSchedule copyOf(PlantSchedule sched) {
+        return new PlantSchedule(sched.getId(), sched.getName(),
+                sched.getRefDay(), sched.getWaterInterval(), sched.getWaterToday());
+    }
+}
@@ -0,0 +1,37 @@
+package com.coconut.young.wateringcan.utils;
+
+/**
+ * The source of the current time for the scheduling math, the notification job and the list
+ *
+ * Everything that asks what time or day it is goes through the Clock, so the notification pipeline
+ * can be replayed against a simulated clock. The app itself always uses the system clock.
+ */
+public abstract class Clock {
+
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static volatile Clock instance = SYSTEM;
+
+    public static Clock getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replace the Clock used by the whole process, to simulate the passage of time
+     *
+     * @param clock the new Clock
+     */
+    public static void setInstance(Clock clock) {
+        instance = clock;
+    }
+
+    /**
+     * @return the current time, in milliseconds since the epoch
+     */
+    public abstract long currentTimeMillis();
+}
@@ -0,0 +1,485 @@
+package com.coconut.young.wateringcan.utils;
+
+
+import java.text.DateFormatSymbols;
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats and parses the app's two date formats without SimpleDateFormat, Date or Calendar
+ *
+ *   short date: "MM/dd/yy", the date a PlantSchedule was last watered, in the device's timezone
+ *   timestamp:  "EEE MMM dd HH:mm:ss zzz yyyy", the debug info on when the job runs
+ *
+ * Both formats match what SimpleDateFormat wrote with the default Locale, so stored strings keep
+ * their meaning. Parsing is lenient like SimpleDateFormat: out of range fields roll over into the
+ * next field, and a two digit year is placed within 80 years before and 20 years after now.
+ *
+ * Every method is safe to call from any thread, the only shared state is immutable caches.
+ */
+public class DateCodec {
+
+    private static final long ONE_SECOND_IN_MILLIS = 1000;
+    private static final long ONE_MINUTE_IN_MILLIS = 60 * ONE_SECOND_IN_MILLIS;
+    private static final long ONE_HOUR_IN_MILLIS = 60 * ONE_MINUTE_IN_MILLIS;
+    private static final long ONE_DAY_IN_MILLIS = 24 * ONE_HOUR_IN_MILLIS;
+
+    // the day of the week of the epoch, 1/1/70, as a Calendar.DAY_OF_WEEK
+    private static final int EPOCH_DAY_OF_WEEK = 5;
+    // two digit years are placed in the century starting this many years ago
+    private static final int TWO_DIGIT_YEAR_PAST = 80;
+
+    private static volatile Symbols symbols;
+    private static volatile ZoneNames zoneNames;
+
+    /**
+     * Format the local date of a time as "MM/dd/yy"
+     *
+     * @param millis a time, in milliseconds since the epoch
+     * @return the formatted date
+     */
+    public static String formatDate(long millis) {
+        return formatCivil(civilFromDays(localDay(millis, TimeZone.getDefault())));
+    }
+
+    /**
+     * Format a PlantSchedule's day as "MM/dd/yy", the date that parseDay reads back as the same day
+     *
+     * @param day a day, in days since the epoch from PlantSchedule
+     * @return the formatted date
+     */
+    public static String formatDay(int day) {
+        // the inverse of parseDayStart, east of UTC a date starts in the day before it
+        int rawOffset = TimeZone.getDefault().getRawOffset();
+        return formatCivil(civilFromDays(day - floorDiv(-rawOffset, ONE_DAY_IN_MILLIS)));
+    }
+
+    private static String formatCivil(long civil) {
+        char[] text = new char[8];
+        putTwoDigits(text, 0, month(civil));
+        text[2] = '/';
+        putTwoDigits(text, 3, dayOfMonth(civil));
+        text[5] = '/';
+        putTwoDigits(text, 6, Math.abs(year(civil) % 100));
+        return new String(text);
+    }
+
+    /**
+     * Parse a "MM/dd/yy" date
+     *
+     * @param text the date to parse, any text after the year is ignored
+     * @return the start of the date in the device's timezone, in milliseconds since the epoch
+     * @throws ParseException if the text does not start with a date
+     */
+    public static long parseDate(String text) throws ParseException {
+        TimeZone timeZone = TimeZone.getDefault();
+        return toUtc(parseCivilDay(text, timeZone) * ONE_DAY_IN_MILLIS, timeZone);
+    }
+
+    /**
+     * Parse a "MM/dd/yy" date to when it starts in the device's standard time, ignoring daylight time
+     * Each date then starts in a day of its own, so a PlantSchedule's reference day read from a date
+     * is written back as the same date by formatDay
+     *
+     * @param text the date to parse, any text after the year is ignored
+     * @return the start of the date in standard time, in milliseconds since the epoch
+     * @throws ParseException if the text does not start with a date
+     */
+    public static long parseDayStart(String text) throws ParseException {
+        TimeZone timeZone = TimeZone.getDefault();
+        return parseCivilDay(text, timeZone) * ONE_DAY_IN_MILLIS - timeZone.getRawOffset();
+    }
+
+    /**
+     * Parse a "MM/dd/yy" date to the day it falls in, as PlantSchedule stores it
+     *
+     * @param text the date to parse
+     * @return the day, in days since the epoch
+     * @throws ParseException if the text does not start with a date
+     */
+    public static int parseDay(String text) throws ParseException {
+        return (int) floorDiv(parseDayStart(text), ONE_DAY_IN_MILLIS);
+    }
+
+    // the date as days since the epoch, without a timezone
+    private static long parseCivilDay(String text, TimeZone timeZone) throws ParseException {
+        long field = parseNumber(text, 0);
+        int month = value(field);
+        int position = expect(text, end(field), '/');
+
+        field = parseNumber(text, position);
+        int dayOfMonth = value(field);
+        position = expect(text, end(field), '/');
+
+        position = skipWhitespace(text, position);
+        field = parseNumber(text, position);
+        int year = value(field);
+
+        // only exactly two digits are a two digit year, any other year is used as written
+        if (end(field) - position == 2) {
+            year = resolveTwoDigitYear(year, month, dayOfMonth, timeZone);
+        }
+        return daysFromCivil(year, month, dayOfMonth);
+    }
+
+    /**
+     * Format a time as "EEE MMM dd HH:mm:ss zzz yyyy" in the device's timezone
+     *
+     * @param millis a time, in milliseconds since the epoch
+     * @return the formatted timestamp
+     */
+    public static String formatTimestamp(long millis) {
+        TimeZone timeZone = TimeZone.getDefault();
+        Symbols symbols = getSymbols();
+        int offset = timeZone.getOffset(millis);
+        long local = millis + offset;
+        long day = floorDiv(local, ONE_DAY_IN_MILLIS);
+        long timeOfDay = local - day * ONE_DAY_IN_MILLIS;
+        long civil = civilFromDays(day);
+
+        char[] time = new char[8];
+        putTwoDigits(time, 0, (int) (timeOfDay / ONE_HOUR_IN_MILLIS));
+        time[2] = ':';
+        putTwoDigits(time, 3, (int) (timeOfDay % ONE_HOUR_IN_MILLIS / ONE_MINUTE_IN_MILLIS));
+        time[5] = ':';
+        putTwoDigits(time, 6, (int) (timeOfDay % ONE_MINUTE_IN_MILLIS / ONE_SECOND_IN_MILLIS));
+
+        char[] dayOfMonth = new char[2];
+        putTwoDigits(dayOfMonth, 0, dayOfMonth(civil));
+
+        StringBuilder timestamp = new StringBuilder(32)
+                .append(symbols.shortWeekdays[(int) floorMod(day + EPOCH_DAY_OF_WEEK - 1, 7) + 1]).append(' ')
+                .append(symbols.shortMonths[month(civil) - 1]).append(' ')
+                .append(dayOfMonth).append(' ')
+                .append(time).append(' ')
+                .append(getZoneNames(timeZone).get(offset != timeZone.getRawOffset())).append(' ');
+
+        int year = year(civil);
+        if (year >= 0 && year < 1000) {
+            timestamp.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        return timestamp.append(year).toString();
+    }
+
+    /**
+     * Parse a "EEE MMM dd HH:mm:ss zzz yyyy" timestamp
+     *
+     * @param text the timestamp to parse
+     * @return the time, in milliseconds since the epoch
+     * @throws ParseException if the text does not start with a timestamp
+     */
+    public static long parseTimestamp(String text) throws ParseException {
+        Symbols symbols = getSymbols();
+
+        // the day of the week is implied by the date, so it only has to be a name
+        int position = skipWhitespace(text, 0);
+        int end = nextWhitespace(text, position);
+        if (indexOf(symbols.shortWeekdays, text, position, end) < 0
+                && indexOf(symbols.weekdays, text, position, end) < 0) {
+            throw new ParseException("Unparseable timestamp: \"" + text + "\"", position);
+        }
+
+        position = skipWhitespace(text, end);
+        end = nextWhitespace(text, position);
+        int month = indexOf(symbols.shortMonths, text, position, end);
+        if (month < 0) {
+            month = indexOf(symbols.months, text, position, end);
+        }
+        if (month < 0) {
+            throw new ParseException("Unparseable timestamp: \"" + text + "\"", position);
+        }
+
+        long field = parseNumber(text, end);
+        int dayOfMonth = value(field);
+        field = parseNumber(text, end(field));
+        int hour = value(field);
+        field = parseNumber(text, expect(text, end(field), ':'));
+        int minute = value(field);
+        field = parseNumber(text, expect(text, end(field), ':'));
+        int second = value(field);
+
+        position = skipWhitespace(text, end(field));
+        end = nextWhitespace(text, position);
+        int offset = parseZoneOffset(text, position, end);
+
+        field = parseNumber(text, end);
+        int year = value(field);
+
+        long local = daysFromCivil(year, month + 1, dayOfMonth) * ONE_DAY_IN_MILLIS
+                + hour * ONE_HOUR_IN_MILLIS + minute * ONE_MINUTE_IN_MILLIS + second * ONE_SECOND_IN_MILLIS;
+        return local - offset;
+    }
+
+    /**
+     * @param millis a time, in milliseconds since the epoch
+     * @return the local calendar day containing the time, in days since the epoch,
+     *          for comparing whether two times are on the same date
+     */
+    public static long toLocalDay(long millis) {
+        return localDay(millis, TimeZone.getDefault());
+    }
+
+    private static long localDay(long millis, TimeZone timeZone) {
+        return floorDiv(millis + timeZone.getOffset(millis), ONE_DAY_IN_MILLIS);
+    }
+
+    /*
+     * Converts a local time to UTC the way GregorianCalendar does, using the offset in effect
+     * at the local time read as standard time
+     */
+    private static long toUtc(long local, TimeZone timeZone) {
+        return local - timeZone.getOffset(local - timeZone.getRawOffset());
+    }
+
+    /*
+     * Places a two digit year in the century starting TWO_DIGIT_YEAR_PAST years ago, as SimpleDateFormat does
+     */
+    private static int resolveTwoDigitYear(int twoDigitYear, int month, int dayOfMonth, TimeZone timeZone) {
+        long now = Clock.getInstance().currentTimeMillis();
+        long local = now + timeZone.getOffset(now);
+        long today = floorDiv(local, ONE_DAY_IN_MILLIS);
+        long civil = civilFromDays(today);
+
+        // Calendar.add(YEAR, -80) keeps the time of day and clamps Feb 29 to Feb 28
+        int startYear = year(civil) - TWO_DIGIT_YEAR_PAST;
+        int startDayOfMonth = dayOfMonth(civil);
+        if (month(civil) == 2 && startDayOfMonth == 29 && !isLeapYear(startYear)) {
+            startDayOfMonth = 28;
+        }
+        long centuryStart = daysFromCivil(startYear, month(civil), startDayOfMonth) * ONE_DAY_IN_MILLIS
+                + (local - today * ONE_DAY_IN_MILLIS);
+
+        int year = (startYear / 100) * 100 + twoDigitYear;
+        if (daysFromCivil(year, month, dayOfMonth) * ONE_DAY_IN_MILLIS < centuryStart) {
+            year += 100;
+        }
+        return year;
+    }
+
+    private static int parseZoneOffset(String text, int start, int end) throws ParseException {
+        String name = text.substring(start, end);
+        TimeZone timeZone = TimeZone.getDefault();
+        ZoneNames names = getZoneNames(timeZone);
+        if (name.equals(names.standard)) {
+            return timeZone.getRawOffset();
+        }
+        if (name.equals(names.daylight)) {
+            return timeZone.getRawOffset() + timeZone.getDSTSavings();
+        }
+
+        // "GMT", or a custom zone such as "GMT+05:30"
+        if (name.startsWith("GMT") || name.startsWith("UTC")) {
+            if (name.length() == 3) {
+                return 0;
+            }
+            char sign = name.charAt(3);
+            if (sign == '+' || sign == '-') {
+                long field = parseNumber(name, 4);
+                int hours = value(field);
+                int minutes = 0;
+                if (end(field) < name.length() && name.charAt(end(field)) == ':') {
+                    minutes = value(parseNumber(name, end(field) + 1));
+                } else if (end(field) - 4 > 2) {
+                    minutes = hours % 100;
+                    hours /= 100;
+                }
+                int offset = (int) (hours * ONE_HOUR_IN_MILLIS + minutes * ONE_MINUTE_IN_MILLIS);
+                return sign == '-' ? -offset : offset;
+            }
+        }
+
+        // any other zone, such as one written before the device changed timezone
+        TimeZone named = TimeZone.getTimeZone(name);
+        if (!"GMT".equals(named.getID())) {
+            return named.getRawOffset();
+        }
+        throw new ParseException("Unparseable time zone: \"" + name + "\"", start);
+    }
+
+    /*
+     * Parses a run of digits after any whitespace, packing the value into the high 32 bits
+     * and the index after the last digit into the low 32 bits, so no object is needed
+     */
+    private static long parseNumber(String text, int start) throws ParseException {
+        int position = skipWhitespace(text, start);
+        int begin = position;
+        long value = 0;
+        while (position < text.length() && position - begin < 9) {
+            int digit = Character.digit(text.charAt(position), 10);
+            if (digit < 0) {
+                break;
+            }
+            value = value * 10 + digit;
+            ++position;
+        }
+        if (position == begin) {
+            throw new ParseException("Unparseable date: \"" + text + "\"", position);
+        }
+        return (value << 32) | position;
+    }
+
+    private static int value(long field) {
+        return (int) (field >>> 32);
+    }
+
+    private static int end(long field) {
+        return (int) field;
+    }
+
+    private static int expect(String text, int position, char expected) throws ParseException {
+        if (position >= text.length() || text.charAt(position) != expected) {
+            throw new ParseException("Unparseable date: \"" + text + "\"", position);
+        }
+        return position + 1;
+    }
+
+    private static int skipWhitespace(String text, int position) {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            ++position;
+        }
+        return position;
+    }
+
+    private static int nextWhitespace(String text, int position) {
+        while (position < text.length() && !Character.isWhitespace(text.charAt(position))) {
+            ++position;
+        }
+        return position;
+    }
+
+    // the index of the name matching text[start, end), ignoring case
+    private static int indexOf(String[] names, String text, int start, int end) {
+        for (int i = 0; i < names.length; ++i) {
+            String name = names[i];
+            if (name.length() > 0 && name.length() == end - start
+                    && text.regionMatches(true, start, name, 0, name.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void putTwoDigits(char[] text, int position, int value) {
+        text[position] = (char) ('0' + value / 10 % 10);
+        text[position + 1] = (char) ('0' + value % 10);
+    }
+
+    /*
+     * Conversions between days since the epoch and proleptic Gregorian dates
+     * Months and days out of range roll over, the same as a lenient Calendar
+     */
+
+    private static long daysFromCivil(long year, long month, long dayOfMonth) {
+        year += floorDiv(month - 1, 12);
+        month = floorMod(month - 1, 12) + 1;
+
+        year -= month <= 2 ? 1 : 0;
+        long era = floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468 + dayOfMonth - 1;
+    }
+
+    // packs the year, month and day of month into one long, read with year(), month() and dayOfMonth()
+    private static long civilFromDays(long day) {
+        day += 719468;
+        long era = floorDiv(day, 146097);
+        long dayOfEra = day - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long dayOfMonth = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (year << 16) | (month << 8) | dayOfMonth;
+    }
+
+    private static int year(long civil) {
+        return (int) (civil >> 16);
+    }
+
+    private static int month(long civil) {
+        return (int) ((civil >> 8) & 0xFF);
+    }
+
+    private static int dayOfMonth(long civil) {
+        return (int) (civil & 0xFF);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            --quotient;
+        }
+        return quotient;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    /*
+     * Caches of locale and timezone names, replaced whenever the default Locale or timezone changes
+     */
+
+    private static Symbols getSymbols() {
+        Locale locale = Locale.getDefault();
+        Symbols cached = symbols;
+        if (cached == null || !cached.locale.equals(locale)) {
+            cached = new Symbols(locale);
+            symbols = cached;
+        }
+        return cached;
+    }
+
+    private static ZoneNames getZoneNames(TimeZone timeZone) {
+        Locale locale = Locale.getDefault();
+        ZoneNames cached = zoneNames;
+        if (cached == null || !cached.id.equals(timeZone.getID()) || !cached.locale.equals(locale)) {
+            cached = new ZoneNames(timeZone, locale);
+            zoneNames = cached;
+        }
+        return cached;
+    }
+
+    private static class Symbols {
+        private final Locale locale;
+        private final String[] weekdays;
+        private final String[] shortWeekdays;
+        private final String[] months;
+        private final String[] shortMonths;
+
+        /*Package-Private*/ Symbols(Locale locale) {
+            DateFormatSymbols dateFormatSymbols = DateFormatSymbols.getInstance(locale);
+            this.locale = locale;
+            this.weekdays = dateFormatSymbols.getWeekdays();
+            this.shortWeekdays = dateFormatSymbols.getShortWeekdays();
+            this.months = dateFormatSymbols.getMonths();
+            this.shortMonths = dateFormatSymbols.getShortMonths();
+        }
+    }
+
+    private static class ZoneNames {
+        private final String id;
+        private final Locale locale;
+        private final String standard;
+        private final String daylight;
+
+        /*Package-Private*/ ZoneNames(TimeZone timeZone, Locale locale) {
+            this.id = timeZone.getID();
+            this.locale = locale;
+            this.standard = timeZone.getDisplayName(false, TimeZone.SHORT, locale);
+            this.daylight = timeZone.getDisplayName(true, TimeZone.SHORT, locale);
+        }
+
+        /*Package-Private*/ String get(boolean inDaylightTime) {
+            return inDaylightTime ? daylight : standard;
+        }
+    }
+}
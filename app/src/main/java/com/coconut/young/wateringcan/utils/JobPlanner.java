@@ -0,0 +1,116 @@
+package com.coconut.young.wateringcan.utils;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.storage.ScheduleDueIndex;
+
+import java.util.Calendar;
+
+/**
+ * Decides when the NotificationJobService should next run, from the reminder preferences
+ * and the stored PlantSchedules
+ *
+ * The planner does not use the Android framework, so the notification pipeline can be simulated on the JVM
+ */
+public class JobPlanner {
+
+    // returned by nextJobTime when no job is needed, and passed as the last job time if it never ran
+    public static final long NO_JOB = -1;
+
+    private final int firstJobOfDayHour;
+    private final int firstJobOfDayMinute;
+    private final long jobFrequencyInMillis;
+    private final boolean wakeWhenDue;
+
+    /**
+     * @param firstJobOfDayHour the hour of PREF_TIME, the day's first reminder
+     * @param firstJobOfDayMinute the minute of PREF_TIME
+     * @param jobFrequencyInMillis PREF_FREQ, how long after each reminder the next one is
+     * @param wakeWhenDue PREF_WAKE_WHEN_DUE, whether reminders that would find nothing to water are skipped
+     */
+    public JobPlanner(int firstJobOfDayHour, int firstJobOfDayMinute, long jobFrequencyInMillis, boolean wakeWhenDue) {
+        this.firstJobOfDayHour = firstJobOfDayHour;
+        this.firstJobOfDayMinute = firstJobOfDayMinute;
+        this.jobFrequencyInMillis = jobFrequencyInMillis;
+        this.wakeWhenDue = wakeWhenDue;
+    }
+
+    public long getJobFrequencyInMillis() {
+        return jobFrequencyInMillis;
+    }
+
+    /**
+     * The next (PREF_TIME + n*PREF_FREQ) after the current time
+     * If PREF_WAKE_WHEN_DUE is set, reminders that would find no plants to water are skipped, and the
+     * result is the first (PREF_TIME + n*PREF_FREQ) that a plant should be watered
+     *
+     * @param currentTime the current time, in milliseconds since the epoch
+     * @param lastJobTime when the NotificationJobService last ran, or NO_JOB
+     * @param index the stored PlantSchedules
+     * @return the time the job should run, in milliseconds since the epoch, or NO_JOB if there are no plants
+     */
+    public long nextJobTime(long currentTime, long lastJobTime, ScheduleDueIndex index) {
+        // calculate the time of the day's first reminder in the device's timezone
+        Calendar nextJob = Calendar.getInstance();
+        nextJob.setTimeInMillis(currentTime);
+        nextJob.set(Calendar.HOUR_OF_DAY, firstJobOfDayHour);
+        nextJob.set(Calendar.MINUTE, firstJobOfDayMinute);
+        nextJob.set(Calendar.SECOND, 0);
+        nextJob.set(Calendar.MILLISECOND, 0);
+
+        long firstJobOfDay = nextJob.getTimeInMillis();
+        long when = nextJobTime(firstJobOfDay, currentTime);
+
+        if (wakeWhenDue) {
+            when = nextDueJobTime(index, lastJobTime, firstJobOfDay, when);
+        }
+        return when;
+    }
+
+    /*
+     * The first (firstJobOfDay + n*jobFrequency) at or after a time
+     * Reminders before the day's first reminder are not used for the current day
+     */
+    private long nextJobTime(long firstJobOfDay, long time) {
+        if (time <= firstJobOfDay) {
+            return firstJobOfDay;
+        }
+        long jobsToSkip = (time - firstJobOfDay + jobFrequencyInMillis - 1) / jobFrequencyInMillis;
+        return firstJobOfDay + jobsToSkip * jobFrequencyInMillis;
+    }
+
+    /*
+     * Move a reminder time forward past every reminder that NotificationJobService would find nothing to do for
+     *
+     * A reminder is needed on a day a plant should be watered if it is the day's first reminder,
+     * which marks every plant that should be watered, or if any of those plants are still unwatered.
+     * Reminders for every plant due on the same day share the same job
+     *
+     * @return the time of the first needed reminder, or NO_JOB if there are no plants
+     */
+    private long nextDueJobTime(ScheduleDueIndex index, long lastJobTime, long firstJobOfDay, long when) {
+        int whenDay = PlantSchedule.dayOf(when);
+
+        int nextDueDay = index.getNextDueDay(whenDay);
+        if (nextDueDay == ScheduleDueIndex.NOTHING_DUE) {
+            return NO_JOB;
+        }
+
+        if (nextDueDay == whenDay) {
+            if (!ranOnSameDay(lastJobTime, when) || index.hasUnwatered(whenDay)) {
+                return when;
+            }
+            // every plant due that day has been watered, so wait for the next day a plant is due
+            nextDueDay = index.getNextDueDay(whenDay + 1);
+        }
+
+        return nextJobTime(firstJobOfDay, PlantSchedule.getStartOfDay(nextDueDay));
+    }
+
+    /*
+     * Whether NotificationJobService last ran on the same calendar day as a time,
+     * in which case a job at that time will not be the day's first
+     */
+    private static boolean ranOnSameDay(long lastJobTime, long time) {
+        return lastJobTime != NO_JOB && DateCodec.toLocalDay(lastJobTime) == DateCodec.toLocalDay(time);
+    }
+}
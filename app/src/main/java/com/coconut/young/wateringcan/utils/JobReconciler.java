@@ -0,0 +1,141 @@
+package com.coconut.young.wateringcan.utils;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.PersistableBundle;
+import android.util.Log;
+
+import com.coconut.young.wateringcan.NotificationJobService;
+import com.coconut.young.wateringcan.settings.DebugActivity;
+import com.coconut.young.wateringcan.storage.JobRun;
+
+import static com.coconut.young.wateringcan.MainActivity.TAG;
+
+/**
+ * Brings the scheduled NotificationJobService job in line with the desired trigger time,
+ * only calling the JobScheduler when the job it holds is different
+ *
+ * Scheduling a persisted job is an IPC and a disk write in the system, and scheduleNextJob runs
+ * every time the MainActivity is shown or hidden, usually with nothing to change
+ */
+public class JobReconciler {
+
+    private static final int JOB_ID = 1;
+
+    // the JobInfo extras that record what the pending job was scheduled for
+    private static final String EXTRA_TRIGGER = "trigger";
+    private static final String EXTRA_FREQUENCY = "frequency";
+    private static final long NO_TRIGGER = JobRun.NOT_SCHEDULED;
+
+    // DEBUG_NEXT when no job is scheduled
+    private static final String NEVER = "never";
+
+    private static final long FIFTEEN_MINUTES_IN_MILLIS = 1000 * 60 * 15;
+
+    /**
+     * Make sure the job is scheduled for a time, rescheduling it only if it is not already
+     *
+     * @param context The context to use to build Components and get Services
+     * @param sharedPref the SharedPreferences to store the alarm execution debug info
+     * @param when the time the job should run, in milliseconds since the epoch
+     * @param jobFrequencyInMillis how long after the trigger time the job may be delayed
+     */
+    public static void reconcile(Context context, SharedPreferences sharedPref, long when, long jobFrequencyInMillis) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        assert jobScheduler != null;
+
+        String nextJob = DateCodec.formatTimestamp(when);
+        long currentTime = Clock.getInstance().currentTimeMillis();
+
+        // a job that is running or has already passed its trigger is replaced, so one is left for next time
+        JobInfo pendingJob = getPendingJob(jobScheduler);
+        if (pendingJob != null && when > currentTime
+                && nextJob.equals(sharedPref.getString(DebugActivity.DEBUG_NEXT, null))
+                && pendingJob.getExtras().getLong(EXTRA_TRIGGER, NO_TRIGGER) == when
+                && pendingJob.getExtras().getLong(EXTRA_FREQUENCY, NO_TRIGGER) == jobFrequencyInMillis) {
+            recordSkipped(sharedPref);
+            return;
+        }
+
+        sharedPref.edit().putString(DebugActivity.DEBUG_NEXT, nextJob).apply();
+
+        long millisBeforeNextJob = Math.max(when - currentTime, 0);
+
+        long timeToAlarm = millisBeforeNextJob / 1000;
+        Log.i(TAG, String.format("Scheduled alarm in %s h %s m %s s  (= %s s)", timeToAlarm / 3600,
+                (timeToAlarm % 3600) / 60,
+                (timeToAlarm % 60),
+                timeToAlarm
+        ));
+
+        PersistableBundle extras = new PersistableBundle();
+        extras.putLong(EXTRA_TRIGGER, when);
+        extras.putLong(EXTRA_FREQUENCY, jobFrequencyInMillis);
+
+        ComponentName jobComponent = new ComponentName(context, NotificationJobService.class);
+
+        // Create JobInfo specifying that the job needs to run at a specific time, then every PREF_FREQ hours
+        // The job is persistent and can be idle or not, charging or not, and on any network (or lack thereof)
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID, jobComponent)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_NONE)
+                .setMinimumLatency(millisBeforeNextJob)
+                .setBackoffCriteria(FIFTEEN_MINUTES_IN_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setOverrideDeadline(millisBeforeNextJob + jobFrequencyInMillis)
+                .setRequiresDeviceIdle(false)
+                .setRequiresCharging(false)
+                .setPersisted(true)
+                .setExtras(extras)
+                .build();
+
+        // scheduling a job with the same id replaces it, so there is only ever one wakeup
+        jobScheduler.schedule(jobInfo);
+    }
+
+    /**
+     * @param extras the extras of the running job, from its JobParameters
+     * @return the time the job was scheduled to run, or JobRun.NOT_SCHEDULED if it is not known
+     */
+    public static long getTrigger(PersistableBundle extras) {
+        return extras != null ? extras.getLong(EXTRA_TRIGGER, NO_TRIGGER) : NO_TRIGGER;
+    }
+
+    /**
+     * Make sure no job is scheduled
+     *
+     * @param context The context used to get the JobScheduler
+     * @param sharedPref the SharedPreferences to store the alarm execution debug info
+     */
+    public static void cancel(Context context, SharedPreferences sharedPref) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        assert jobScheduler != null;
+
+        if (getPendingJob(jobScheduler) == null && NEVER.equals(sharedPref.getString(DebugActivity.DEBUG_NEXT, null))) {
+            recordSkipped(sharedPref);
+            return;
+        }
+        jobScheduler.cancel(JOB_ID);
+        sharedPref.edit().putString(DebugActivity.DEBUG_NEXT, NEVER).apply();
+        Log.i(TAG, "Cancelled alarm");
+    }
+
+    private static JobInfo getPendingJob(JobScheduler jobScheduler) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return jobScheduler.getPendingJob(JOB_ID);
+        }
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private static void recordSkipped(SharedPreferences sharedPref) {
+        int skipped = sharedPref.getInt(DebugActivity.DEBUG_SKIPPED, 0) + 1;
+        sharedPref.edit().putInt(DebugActivity.DEBUG_SKIPPED, skipped).apply();
+    }
+}
@@ -2,9 +2,6 @@ package com.coconut.young.wateringcan.utils;
 
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.job.JobInfo;
-import android.app.job.JobScheduler;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Build;
@@ -12,20 +9,12 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.coconut.young.wateringcan.settings.DebugActivity;
-import com.coconut.young.wateringcan.NotificationJobService;
-import com.coconut.young.wateringcan.PlantSchedule;
 import com.coconut.young.wateringcan.R;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.coconut.young.wateringcan.storage.ScheduleStore;
+import com.coconut.young.wateringcan.storage.ScheduleWriter;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+import java.text.ParseException;
 
 import static com.coconut.young.wateringcan.MainActivity.TAG;
 
@@ -33,73 +22,54 @@ public class Utilities {
 
     public static final String NOTIFICATION_CHANNEL_ID = "WateringCanChannel";
 
-    private static final String PERSISTENT_SCHEDULES = "savedSchedules";
-    public static final SimpleDateFormat FULL_DATE_FORMAT = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.getDefault());
-
     private static final int HOUR_IN_MILLIS = 1000 * 60 * 60;
-    private static final long FIFTEEN_MINUTES_IN_MILLIS = 1000 * 60 * 15;
 
     /**
-     * Converts scheduleList to a string and saves it in persistent storage
+     * Call scheduleNextJob in the background, after every pending change is written,
+     * since it reads the stored PlantSchedules
      *
-     * @param sharedPref the SharedPreferences to store the ScheduleList in at PERSISTENT_SCHEDULES
-     * @param scheduleList the List<PlantSchedule> to store in persistent storage
+     * @param context The context to use to build Components and get Services
+     * @param sharedPref the SharedPreferences to store the alarm execution debug info
      */
-    public static void saveScheduleList(SharedPreferences sharedPref, List<PlantSchedule> scheduleList) {
-
-        JSONArray savedArray = new JSONArray();
-
-        for (PlantSchedule sched : scheduleList) {
-            JSONObject schedJson = new JSONObject();
-
-            try {
-                schedJson.put("name", sched.getName());
-                schedJson.put("date", PlantSchedule.DATE_FORMAT.format(sched.getRefDate()));
-                schedJson.put("interval", sched.getWaterInterval());
-                schedJson.put("water", sched.getWaterToday());
-                savedArray.put(schedJson);
-            } catch (JSONException e) {
-                Log.e(TAG, "Exception while saving PlantSchedule");
+    public static void scheduleNextJobInBackground(final Context context, final SharedPreferences sharedPref) {
+        final Context appContext = context.getApplicationContext();
+        ScheduleWriter.getInstance(context).execute(new Runnable() {
+            @Override
+            public void run() {
+                scheduleNextJob(appContext, sharedPref);
             }
-        }
-
-        Log.i(TAG, "Saving " + savedArray.toString());
-
-        sharedPref.edit().putString(PERSISTENT_SCHEDULES, savedArray.toString()).apply();
+        });
     }
 
     /**
-     * Load the string from persistent storage and convert it to a list
+     * Schedule a job for the next (PREF_TIME + n*PREF_FREQ) that will repeat approximately every PREF_FREQ hours
+     * If PREF_WAKE_WHEN_DUE is set, reminders that would find no plants to water are skipped, and the
+     * job is scheduled for the first (PREF_TIME + n*PREF_FREQ) that a plant should be watered
      *
-     * @param sharedPref the SharedPreferences to get the ScheduleList from at PERSISTENT_SCHEDULES
+     * @param context The context to use to build Components and get Services
+     * @param sharedPref the SharedPreferences to store the alarm execution debug info
      */
-    public static List<PlantSchedule> loadScheduleList(SharedPreferences sharedPref) {
-
-        List<PlantSchedule> list = new ArrayList<>();
-        String unformattedList = sharedPref.getString(PERSISTENT_SCHEDULES, "");
+    public static void scheduleNextJob(Context context, SharedPreferences sharedPref) {
 
-        Log.i(TAG, "Loaded " + unformattedList);
+        JobPlanner planner = getJobPlanner(context);
+        long when = planner.nextJobTime(Clock.getInstance().currentTimeMillis(), getLastJobTime(sharedPref),
+                ScheduleStore.getInstance(context));
 
-        try {
-            JSONArray savedArray = new JSONArray(unformattedList);
-            for (int i = 0; i < savedArray.length(); ++i) {
-                list.add(new PlantSchedule(savedArray.getJSONObject(i)));
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "Exception loading PlantSchedule");
+        if (when == JobPlanner.NO_JOB) {
+            // there are no plants, adding one saves the list and schedules the job again
+            Log.i(TAG, "No plants to water");
+            JobReconciler.cancel(context, sharedPref);
+            return;
         }
 
-        return list;
+        // the job is only rescheduled if it is not already scheduled for this time
+        JobReconciler.reconcile(context, sharedPref, when, planner.getJobFrequencyInMillis());
     }
 
-    /**
-     * Schedule a job for the next (PREF_TIME + n*PREF_FREQ) that will repeat approximately every PREF_FREQ hours
-     *
-     * @param context The context to use to build Components and get Services
-     * @param sharedPref the SharedPreferences to store the alarm execution debug info
+    /*
+     * Reads PREF_TIME, PREF_FREQ and PREF_WAKE_WHEN_DUE
      */
-    public static void scheduleNextJob(Context context, SharedPreferences sharedPref) {
-
+    private static JobPlanner getJobPlanner(Context context) {
         SharedPreferences defaultSharedPref = PreferenceManager.getDefaultSharedPreferences(context);
 
         String[] firstJobOfDayStrings = defaultSharedPref.getString(
@@ -109,50 +79,23 @@ public class Utilities {
 
         int jobFrequency = Integer.parseInt(defaultSharedPref.getString(
                 context.getResources().getString(R.string.pref_freq_key), "12"));
+        long jobFrequencyInMillis = (long) jobFrequency * HOUR_IN_MILLIS;
+
+        boolean wakeWhenDue = defaultSharedPref.getBoolean(
+                context.getResources().getString(R.string.pref_wake_when_due_key), true);
 
-        // calculate the time of the next (PREF_TIME + n*PREF_FREQ) in the device's timezone
-        Calendar nextJob = Calendar.getInstance();
-        Date currentTime = nextJob.getTime();
-        nextJob.set(Calendar.HOUR_OF_DAY, firstJobOfDayHour);
-        nextJob.set(Calendar.MINUTE, firstJobOfDayMinute);
-        nextJob.set(Calendar.SECOND, 0);
-        nextJob.set(Calendar.MILLISECOND, 0);
+        return new JobPlanner(firstJobOfDayHour, firstJobOfDayMinute, jobFrequencyInMillis, wakeWhenDue);
+    }
 
-        while (currentTime.after(nextJob.getTime())) {
-            nextJob.setTimeInMillis(nextJob.getTimeInMillis() + jobFrequency * HOUR_IN_MILLIS);
+    /*
+     * When NotificationJobService last ran, or JobPlanner.NO_JOB if it never has
+     */
+    private static long getLastJobTime(SharedPreferences sharedPref) {
+        try {
+            return DateCodec.parseTimestamp(sharedPref.getString(DebugActivity.DEBUG_LAST, ""));
+        } catch (ParseException e) {
+            return JobPlanner.NO_JOB;
         }
-        long when = nextJob.getTimeInMillis();
-
-        sharedPref.edit().putString(DebugActivity.DEBUG_NEXT, FULL_DATE_FORMAT.format(nextJob.getTime())).apply();
-
-        long millisBeforeNextJob = when - currentTime.getTime();
-
-        long timeToAlarm = millisBeforeNextJob / 1000;
-        Log.i(TAG, String.format("Scheduled alarm in %s h %s m %s s  (= %s s)", timeToAlarm / 3600,
-                (timeToAlarm % 3600) / 60,
-                (timeToAlarm % 60),
-                timeToAlarm
-        ));
-
-        ComponentName jobComponent = new ComponentName(context, NotificationJobService.class);
-
-        // Create JobInfo specifying that the job needs to run at a specific time, then every PREF_FREQ hours
-        // The job is persistent and can be idle or not, charging or not, and on any network (or lack thereof)
-        JobInfo jobInfo = new JobInfo.Builder(1, jobComponent)
-                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_NONE)
-                .setMinimumLatency(millisBeforeNextJob)
-                .setBackoffCriteria(FIFTEEN_MINUTES_IN_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
-                .setOverrideDeadline(millisBeforeNextJob + jobFrequency * HOUR_IN_MILLIS)
-                .setRequiresDeviceIdle(false)
-                .setRequiresCharging(false)
-                .setPersisted(true)
-                .build();
-
-        // Schedule the job
-        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
-        assert jobScheduler != null;
-        jobScheduler.cancelAll();
-        jobScheduler.schedule(jobInfo);
     }
 
     /**
@@ -0,0 +1,170 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks DueDigest against scanning every PlantSchedule, the way the ScheduleStore counted before it
+ */
+public class DueDigestTest {
+
+    private static final int FIRST_DAY = 17600;
+    private static final long GENERATION = 42;
+
+    @Test
+    public void countsMatchScanAcrossDays() throws IOException {
+        Random random = new Random(1);
+        TreeMap<Long, PlantSchedule> schedules = new TreeMap<>();
+        DueDigest digest = new DueDigest(GENERATION, FIRST_DAY);
+        int today = FIRST_DAY;
+
+        for (int step = 0; step < 2000; ++step) {
+            long id = random.nextInt(200);
+            int action = random.nextInt(10);
+            if (action < 6) {
+                // mostly past reference days, and some that have not been reached yet
+                int refDay = today - random.nextInt(40) + (random.nextInt(8) == 0 ? 1 + random.nextInt(5) : 0);
+                PlantSchedule sched = new PlantSchedule(id, null, refDay, 1 + random.nextInt(14), random.nextBoolean());
+                schedules.put(id, sched);
+                digest.put(id, sched.getRefDay(), sched.getWaterInterval(), sched.getWaterToday());
+            } else if (action < 8) {
+                schedules.remove(id);
+                digest.remove(id);
+            } else if (action < 9) {
+                today += random.nextInt(3);
+                digest.moveTo(today);
+            } else {
+                digest = DueDigest.read(toInput(toBytes(digest)));
+            }
+
+            assertEquals(schedules.size(), digest.size());
+            for (int day = today; day < today + DueDigest.DAYS + 10; day += 1 + random.nextInt(7)) {
+                assertMatchesScan(schedules, digest, day);
+            }
+        }
+    }
+
+    @Test
+    public void readDigestMatchesWrittenOne() throws IOException {
+        TreeMap<Long, PlantSchedule> schedules = randomSchedules(new Random(2), 300);
+        DueDigest digest = newDigest(schedules);
+
+        DueDigest read = DueDigest.read(toInput(toBytes(digest)));
+        assertEquals(GENERATION, read.getGeneration());
+        assertEquals(FIRST_DAY, read.getFirstDay());
+        for (int day = FIRST_DAY; day < FIRST_DAY + DueDigest.DAYS; ++day) {
+            assertMatchesScan(schedules, read, day);
+        }
+    }
+
+    @Test
+    public void truncatedDigestIsRejected() {
+        byte[] bytes = toBytes(newDigest(randomSchedules(new Random(3), 50)));
+        for (int length = 0; length < bytes.length; ++length) {
+            assertRejected("truncated to " + length, Arrays.copyOf(bytes, length));
+        }
+    }
+
+    @Test
+    public void corruptDigestIsRejected() {
+        byte[] bytes = toBytes(newDigest(randomSchedules(new Random(4), 50)));
+        for (int i = 0; i < bytes.length; ++i) {
+            for (int bit = 0; bit < 8; ++bit) {
+                byte[] corrupt = bytes.clone();
+                corrupt[i] ^= 1 << bit;
+                assertRejected("bit " + bit + " of byte " + i + " flipped", corrupt);
+            }
+        }
+    }
+
+    private static TreeMap<Long, PlantSchedule> randomSchedules(Random random, int count) {
+        TreeMap<Long, PlantSchedule> schedules = new TreeMap<>();
+        for (long id = 1; id <= count; ++id) {
+            int refDay = FIRST_DAY - random.nextInt(60) + random.nextInt(5);
+            schedules.put(id, new PlantSchedule(id, null, refDay, 1 + random.nextInt(14), random.nextBoolean()));
+        }
+        return schedules;
+    }
+
+    private static DueDigest newDigest(TreeMap<Long, PlantSchedule> schedules) {
+        DueDigest digest = new DueDigest(GENERATION, FIRST_DAY);
+        for (PlantSchedule sched : schedules.values()) {
+            digest.put(sched.getId(), sched.getRefDay(), sched.getWaterInterval(), sched.getWaterToday());
+        }
+        return digest;
+    }
+
+    private static void assertMatchesScan(TreeMap<Long, PlantSchedule> schedules, DueDigest digest, int day) {
+        int due = 0;
+        int markedDue = 0;
+        int nextDueDay = ScheduleDueIndex.NOTHING_DUE;
+        List<Long> dueIds = new ArrayList<>();
+        for (PlantSchedule sched : schedules.values()) {
+            if (sched.shouldWaterToday(day)) {
+                ++due;
+                markedDue += sched.getWaterToday() ? 1 : 0;
+                dueIds.add(sched.getId());
+            }
+            nextDueDay = Math.min(nextDueDay, sched.getNextWateringDay(day));
+        }
+
+        String message = "day " + day;
+        assertEquals(message, due, digest.countDue(day));
+        assertEquals(message, markedDue, digest.countMarkedDue(day));
+        assertEquals(message, nextDueDay, digest.getNextDueDay(day));
+
+        ScheduleTable dueTable = digest.getDue(day, PlantSchedule.NO_ID);
+        List<Long> listedIds = new ArrayList<>();
+        for (int i = 0; i < dueTable.size(); ++i) {
+            PlantSchedule sched = schedules.get(dueTable.getId(i));
+            listedIds.add(dueTable.getId(i));
+            assertEquals(message, PlantSchedule.mostRecentWateringDay(sched.getRefDay(), sched.getWaterInterval(), day),
+                    dueTable.getRefDay(i));
+            assertEquals(message, sched.getWaterInterval(), dueTable.getWaterInterval(i));
+            assertEquals(message, sched.getWaterToday(), dueTable.getWaterToday(i));
+        }
+        assertEquals(message, dueIds, listedIds);
+    }
+
+    /*
+     * The ScheduleStore rebuilds the digest from its rows whenever reading it throws an IOException
+     */
+    private static void assertRejected(String message, byte[] bytes) {
+        try {
+            DueDigest.read(toInput(bytes));
+            fail("Read a digest " + message);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] toBytes(DueDigest digest) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            digest.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream toInput(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,82 @@
+package com.coconut.young.wateringcan.storage;
+
+import com.coconut.young.wateringcan.PlantSchedule;
+import com.coconut.young.wateringcan.ScheduleTable;
+import com.coconut.young.wateringcan.utils.Clock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that PlantSchedules exported by ScheduleCsvWriter come back unchanged through ScheduleCsvReader
+ */
+public class ScheduleCsvTest {
+
+    private static final int FIRST_DAY = 20700;
+    private static final int DAYS = 100;
+    // longer than the days exported, so importing does not move any reference day to a later watering day
+    private static final int INTERVAL = 365;
+
+    private static final String[] ZONES = { "Pacific/Pago_Pago", "America/Los_Angeles", "America/New_York",
+            "UTC", "Europe/Berlin", "Asia/Kolkata", "Australia/Sydney", "Pacific/Kiritimati" };
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        final long now = PlantSchedule.getStartOfDay(FIRST_DAY + DAYS);
+        Clock.setInstance(new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+        Clock.setInstance(Clock.SYSTEM);
+    }
+
+    @Test
+    public void exportedSchedulesImportUnchanged() throws IOException {
+        ScheduleTable table = new ScheduleTable(DAYS);
+        for (int i = 0; i < DAYS; ++i) {
+            table.add(i + 1, "Plant, \"" + i + "\"", FIRST_DAY + i, INTERVAL + i, i % 2 == 0);
+        }
+
+        for (String zone : ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+
+            StringWriter out = new StringWriter();
+            ScheduleCsvWriter writer = new ScheduleCsvWriter(out);
+            for (int i = 0; i < table.size(); ++i) {
+                writer.write(table, i);
+            }
+            writer.finish();
+
+            ScheduleCsvReader reader = new ScheduleCsvReader(new StringReader(out.toString()));
+            for (int i = 0; i < table.size(); ++i) {
+                PlantSchedule sched = reader.read();
+                String message = zone + " row " + i;
+                assertEquals(message, table.getName(i), sched.getName());
+                assertEquals(message, table.getRefDay(i), sched.getRefDay());
+                assertEquals(message, table.getWaterInterval(i), sched.getWaterInterval());
+                assertEquals(message, table.getWaterToday(i), sched.getWaterToday());
+            }
+            assertNull(zone, reader.read());
+            assertEquals(zone, 0, reader.getSkipped());
+        }
+    }
+}
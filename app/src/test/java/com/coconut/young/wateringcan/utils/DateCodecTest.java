@@ -0,0 +1,165 @@
+package com.coconut.young.wateringcan.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks DateCodec against the SimpleDateFormat it replaced, which wrote the dates already stored
+ */
+public class DateCodecTest {
+
+    private static final String DATE_FORMAT = "MM/dd/yy";
+    private static final String TIMESTAMP_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+
+    // a zone with daylight saving time, so both of its names and both transitions are covered
+    private static final String DST_ZONE = "America/New_York";
+
+    // from 1/1/17 to 1/1/20 in steps that land on every hour of the day
+    private static final long START_MILLIS = 1483228800000L;
+    private static final long END_MILLIS = 1577836800000L;
+    private static final long STEP_MILLIS = (7 * 60 + 13) * 60 * 1000L + 17 * 1000L;
+    private static final long ONE_DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private TimeZone defaultTimeZone;
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void dateMatchesSimpleDateFormatInUtc() throws ParseException {
+        checkDates("UTC");
+    }
+
+    @Test
+    public void dateMatchesSimpleDateFormatWithDaylightTime() throws ParseException {
+        checkDates(DST_ZONE);
+    }
+
+    @Test
+    public void timestampMatchesSimpleDateFormatInUtc() throws ParseException {
+        checkTimestamps("UTC");
+    }
+
+    @Test
+    public void timestampMatchesSimpleDateFormatWithDaylightTime() throws ParseException {
+        checkTimestamps(DST_ZONE);
+    }
+
+    @Test
+    public void dayRoundTripsInEveryOffset() throws ParseException {
+        // from twelve hours behind UTC to fourteen ahead, with and without daylight time
+        String[] zones = { "Etc/GMT+12", "Pacific/Pago_Pago", "America/Los_Angeles", DST_ZONE, "UTC",
+                "Europe/London", "Asia/Kolkata", "Australia/Sydney", "Pacific/Auckland", "Pacific/Kiritimati" };
+        int firstDay = (int) (START_MILLIS / ONE_DAY_IN_MILLIS);
+        int lastDay = (int) (END_MILLIS / ONE_DAY_IN_MILLIS);
+        for (String zone : zones) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            for (int day = firstDay; day < lastDay; ++day) {
+                assertEquals(zone + " " + day, day, DateCodec.parseDay(DateCodec.formatDay(day)));
+            }
+        }
+    }
+
+    @Test
+    public void parseIgnoresSurroundingSpaces() throws ParseException {
+        TimeZone.setDefault(TimeZone.getTimeZone(DST_ZONE));
+
+        assertEquals(parse(DATE_FORMAT, "03/11/18"), DateCodec.parseDate("  03/11/18"));
+        assertEquals(parse(DATE_FORMAT, "03/11/18"), DateCodec.parseDate("03/11/18  "));
+        assertEquals(parse(DATE_FORMAT, "03/11/18"), DateCodec.parseDate("03/11/ 18"));
+        assertEquals(parse(TIMESTAMP_FORMAT, "Sun Mar 11 03:30:00 EDT 2018"),
+                DateCodec.parseTimestamp("  Sun Mar 11 03:30:00 EDT 2018  "));
+    }
+
+    @Test
+    public void parseRollsOverLikeSimpleDateFormat() throws ParseException {
+        TimeZone.setDefault(TimeZone.getTimeZone(DST_ZONE));
+
+        String[] dates = { "13/01/17", "02/29/17", "12/32/18", "00/00/18", "02/29/16", "1/2/2018" };
+        for (String date : dates) {
+            assertEquals(date, parse(DATE_FORMAT, date), DateCodec.parseDate(date));
+        }
+        String[] timestamps = { "Mon Jan 32 10:00:00 EST 2018", "Mon Dec 31 24:00:00 EST 2018",
+                "Mon Jan 01 10:60:60 EST 2018", "Tue Feb 29 10:00:00 EST 2018" };
+        for (String timestamp : timestamps) {
+            assertEquals(timestamp, parse(TIMESTAMP_FORMAT, timestamp), DateCodec.parseTimestamp(timestamp));
+        }
+    }
+
+    @Test
+    public void parseRejectsInvalidDates() {
+        String[] dates = { "", "   ", "03", "03/", "03/11", "03/11/", "03-11-18", "ab/cd/ef", "/11/18" };
+        for (String date : dates) {
+            try {
+                DateCodec.parseDate(date);
+                fail("Parsed \"" + date + "\"");
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void parseRejectsInvalidTimestamps() {
+        TimeZone.setDefault(TimeZone.getTimeZone(DST_ZONE));
+
+        String[] timestamps = { "", "Sun", "Sun Mar", "Xyz Mar 11 10:00:00 EDT 2018",
+                "Sun Xyz 11 10:00:00 EDT 2018", "Sun Mar 11 10:00 EDT 2018", "Sun Mar 11 10:00:00 Xyz 2018",
+                "Sun Mar 11 10:00:00 EDT", "03/11/18" };
+        for (String timestamp : timestamps) {
+            try {
+                DateCodec.parseTimestamp(timestamp);
+                fail("Parsed \"" + timestamp + "\"");
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void checkDates(String zone) throws ParseException {
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
+
+        for (long millis = START_MILLIS; millis < END_MILLIS; millis += STEP_MILLIS) {
+            String expected = format.format(new Date(millis));
+            assertEquals(expected, DateCodec.formatDate(millis));
+            assertEquals(expected, format.parse(expected).getTime(), DateCodec.parseDate(expected));
+        }
+    }
+
+    private static void checkTimestamps(String zone) throws ParseException {
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.getDefault());
+
+        for (long millis = START_MILLIS; millis < END_MILLIS; millis += STEP_MILLIS) {
+            String expected = format.format(new Date(millis));
+            assertEquals(expected, DateCodec.formatTimestamp(millis));
+            assertEquals(expected, millis / 1000 * 1000, DateCodec.parseTimestamp(expected));
+        }
+    }
+
+    private static long parse(String pattern, String text) throws ParseException {
+        return new SimpleDateFormat(pattern, Locale.getDefault()).parse(text).getTime();
+    }
+}
@@ -0,0 +1,28 @@
+package com.coconut.young.wateringcan;
+
+import java.util.Random;
+
+/**
+ * Builds the PlantSchedules the benchmarks run on, the same ones on every run
+ */
+/*Package-Private*/ class BenchmarkSchedules {
+
+    private static final long SEED = 42;
+    private static final int LONGEST_INTERVAL = 14;
+    private static final int OLDEST_REFERENCE_IN_DAYS = 60;
+
+    /**
+     * @param size the number of PlantSchedules
+     * @param today the day the PlantSchedules are evaluated on
+     * @return stored PlantSchedules, with ids from 1, watered within the last two months
+     */
+    /*Package-Private*/ static ScheduleTable create(int size, int today) {
+        Random random = new Random(SEED);
+        ScheduleTable table = new ScheduleTable(size);
+        for (int i = 0; i < size; ++i) {
+            table.add(i + 1, "Plant " + i, today - random.nextInt(OLDEST_REFERENCE_IN_DAYS),
+                    1 + random.nextInt(LONGEST_INTERVAL), random.nextBoolean());
+        }
+        return table;
+    }
+}
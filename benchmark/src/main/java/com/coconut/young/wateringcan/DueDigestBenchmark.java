@@ -0,0 +1,78 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.storage.DueDigest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DueDigest the ScheduleStore answers the job from: counting and listing the PlantSchedules due
+ * today, reading the digest when the process starts, and building it from every row when it is stale
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DueDigestBenchmark {
+
+    @Param({ "10", "1000", "10000", "100000" })
+    public int size;
+
+    private int today;
+    private ScheduleTable table;
+    private DueDigest digest;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() throws IOException {
+        today = PlantSchedule.today();
+        table = BenchmarkSchedules.create(size, today);
+        digest = build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        digest.write(new DataOutputStream(bytes));
+        stored = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int countDue() {
+        return digest.countDue(today) + digest.countMarkedDue(today);
+    }
+
+    @Benchmark
+    public ScheduleTable listDue() {
+        return digest.getDue(today, PlantSchedule.NO_ID);
+    }
+
+    @Benchmark
+    public DueDigest read() throws IOException {
+        return DueDigest.read(new DataInputStream(new ByteArrayInputStream(stored)));
+    }
+
+    @Benchmark
+    public DueDigest build() {
+        DueDigest built = new DueDigest(0, today);
+        for (int i = 0; i < table.size(); ++i) {
+            built.put(table.getId(i), table.getRefDay(i), table.getWaterInterval(i), table.getWaterToday(i));
+        }
+        return built;
+    }
+}
@@ -0,0 +1,69 @@
+package com.coconut.young.wateringcan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NotificationJobService's loop over the due PlantSchedules: each row is decoded into a new
+ * PlantSchedule, as the ScheduleStore does, and visited by a DueCounter. Every row is visited, as if
+ * they were all due, which is the job's worst case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobEvaluationBenchmark {
+
+    @Param({ "10", "1000", "10000", "100000" })
+    public int size;
+
+    // whether the job already ran today, which changes which PlantSchedules are counted
+    @Param({ "false", "true" })
+    public boolean lastJobWasToday;
+
+    private int today;
+    private long[] ids;
+    private int[] refDays;
+    private int[] intervals;
+    private boolean[] waters;
+
+    @Setup
+    public void setUp() {
+        today = PlantSchedule.today();
+        ScheduleTable table = BenchmarkSchedules.create(size, today);
+
+        ids = new long[size];
+        refDays = new int[size];
+        intervals = new int[size];
+        waters = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            ids[i] = table.getId(i);
+            refDays[i] = table.getRefDay(i);
+            intervals[i] = table.getWaterInterval(i);
+            waters[i] = table.getWaterToday(i);
+        }
+    }
+
+    @Benchmark
+    public int evaluateDue() {
+        DueCounter counter = new DueCounter(today, lastJobWasToday, true);
+        for (int i = 0; i < size; ++i) {
+            // names are not decoded for the job
+            counter.visit(new PlantSchedule(ids[i], null, refDays[i], intervals[i], waters[i]));
+        }
+        return counter.getNumPlants() + counter.getChangedList().size();
+    }
+}
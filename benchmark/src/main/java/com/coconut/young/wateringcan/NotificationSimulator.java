@@ -0,0 +1,240 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.storage.ScheduleVisitor;
+import com.coconut.young.wateringcan.utils.Clock;
+import com.coconut.young.wateringcan.utils.DateCodec;
+import com.coconut.young.wateringcan.utils.JobPlanner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays the notification pipeline over many days on a simulated Clock, without a device
+ *
+ * Each job run does what NotificationJobService does: it counts the due PlantSchedules with a DueCounter,
+ * stores the changes, shows a notification if any plant needs water, and plans the next job with the
+ * JobPlanner. The JobScheduler runs each job up to `jitter` minutes late. After a notification the user
+ * opens the app with probability `respond`, within `delay` hours, and waters every plant that needs it.
+ *
+ *   ./gradlew :benchmark:simulate -PsimArgs="plants=10000 days=180"
+ *
+ * Options, as name=value: plants, days, time (PREF_TIME, H:MM), freq (PREF_FREQ, hours),
+ * wakeWhenDue, respond, delay, jitter, seed, and verbose to print every job run.
+ *
+ * A watering is missed when a plant should be watered on a day but no notification counted it that day.
+ */
+public class NotificationSimulator {
+
+    private static final long ONE_MINUTE_IN_MILLIS = 1000 * 60;
+    private static final long ONE_HOUR_IN_MILLIS = 60 * ONE_MINUTE_IN_MILLIS;
+    private static final long NO_VISIT = Long.MAX_VALUE;
+    // how long each job run takes on the simulated clock, so the next one is planned after it started
+    private static final long JOB_DURATION_IN_MILLIS = 1000;
+
+    /*
+     * A Clock that only moves when the simulation moves it
+     */
+    private static class SimulatedClock extends Clock {
+        private long time;
+
+        private SimulatedClock(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    private final int plants;
+    private final int days;
+    private final JobPlanner planner;
+    private final double respond;
+    private final long delayInMillis;
+    private final long jitterInMillis;
+    private final boolean verbose;
+    private final Random random;
+
+    private final SimulatedClock clock;
+    private final SimulatedGarden garden;
+    // the last day each plant was counted in a notification
+    private final int[] notifiedDays;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private long lastJobTime = JobPlanner.NO_JOB;
+    private long pendingJob;
+    private long pendingVisit = NO_VISIT;
+
+    private int wakeups = 0;
+    private int notifications = 0;
+    private long plantsNotified = 0;
+    private int visits = 0;
+    private long wateringDays = 0;
+    private long missed = 0;
+    private long totalCpuNanos = 0;
+    private long maxCpuNanos = 0;
+
+    private NotificationSimulator(Map<String, String> options) {
+        plants = Integer.parseInt(option(options, "plants", "1000"));
+        days = Integer.parseInt(option(options, "days", "90"));
+        String[] time = option(options, "time", "6:30").split(":");
+        long frequencyInMillis = Long.parseLong(option(options, "freq", "12")) * ONE_HOUR_IN_MILLIS;
+        boolean wakeWhenDue = Boolean.parseBoolean(option(options, "wakeWhenDue", "true"));
+        planner = new JobPlanner(Integer.parseInt(time[0]), Integer.parseInt(time[1]), frequencyInMillis, wakeWhenDue);
+        respond = Double.parseDouble(option(options, "respond", "0.9"));
+        delayInMillis = Long.parseLong(option(options, "delay", "4")) * ONE_HOUR_IN_MILLIS;
+        jitterInMillis = Long.parseLong(option(options, "jitter", "15")) * ONE_MINUTE_IN_MILLIS;
+        verbose = Boolean.parseBoolean(option(options, "verbose", "false"));
+        random = new Random(Long.parseLong(option(options, "seed", "42")));
+
+        // the simulation starts when today starts, with every plant watered
+        int today = PlantSchedule.today();
+        clock = new SimulatedClock(PlantSchedule.getStartOfDay(today));
+        Clock.setInstance(clock);
+        garden = new SimulatedGarden(BenchmarkSchedules.create(plants, today), today);
+        notifiedDays = new int[plants];
+        for (int i = 0; i < plants; ++i) {
+            notifiedDays[i] = today - 1;
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected name=value, not " + arg);
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        long start = System.nanoTime();
+        NotificationSimulator simulator = new NotificationSimulator(options);
+        simulator.run();
+        simulator.report((System.nanoTime() - start) / 1000000);
+    }
+
+    private void run() {
+        int firstDay = PlantSchedule.today();
+        int endDay = firstDay + days;
+        long end = PlantSchedule.getStartOfDay(endDay);
+
+        // the app is opened once, which schedules the first job
+        pendingJob = delay(planner.nextJobTime(clock.time, lastJobTime, garden));
+
+        int day = firstDay;
+        while (true) {
+            long next = Math.min(pendingVisit, pendingJob == JobPlanner.NO_JOB ? NO_VISIT : pendingJob);
+            long time = Math.min(next, end);
+            // every day that ends before the next event is checked for missed waterings
+            while (PlantSchedule.dayOf(time) > day) {
+                endDay(day++);
+            }
+            if (next >= end) {
+                break;
+            }
+
+            clock.time = next;
+            if (next == pendingVisit) {
+                visit();
+            } else {
+                runJob();
+            }
+        }
+    }
+
+    /*
+     * What NotificationJobService.onStartJob does, timed on the CPU
+     */
+    private void runJob() {
+        long cpuStart = threads.getCurrentThreadCpuTime();
+
+        long now = clock.time;
+        boolean lastJobWasToday = lastJobTime != JobPlanner.NO_JOB
+                && DateCodec.toLocalDay(lastJobTime) == DateCodec.toLocalDay(now);
+        lastJobTime = now;
+
+        final DueCounter dueCounter = new DueCounter(PlantSchedule.today(), lastJobWasToday, true);
+        final int today = dueCounter.getToday();
+        garden.forEachDue(today, new ScheduleVisitor() {
+            @Override
+            public void visit(PlantSchedule sched) {
+                dueCounter.visit(sched);
+                if (sched.getWaterToday() && sched.shouldWaterToday(today)) {
+                    notifiedDays[(int) sched.getId()] = today;
+                }
+            }
+        });
+        int numPlants = dueCounter.getNumPlants();
+        clock.time += JOB_DURATION_IN_MILLIS;
+        pendingJob = delay(planner.nextJobTime(clock.time, lastJobTime, garden));
+
+        long cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+        totalCpuNanos += cpuNanos;
+        maxCpuNanos = Math.max(maxCpuNanos, cpuNanos);
+        ++wakeups;
+
+        if (numPlants > 0) {
+            ++notifications;
+            plantsNotified += numPlants;
+            if (pendingVisit == NO_VISIT && random.nextDouble() < respond) {
+                pendingVisit = now + (long) (random.nextDouble() * delayInMillis);
+            }
+        }
+        if (verbose) {
+            System.out.printf("%s  %6d plants  %8.1f us%n", DateCodec.formatTimestamp(now), numPlants, cpuNanos / 1000.0);
+        }
+    }
+
+    /*
+     * The user opens the app, waters every plant that needs it, and leaves, which schedules the job again
+     */
+    private void visit() {
+        pendingVisit = NO_VISIT;
+        ++visits;
+        garden.waterAll(PlantSchedule.today());
+        pendingJob = delay(planner.nextJobTime(clock.time, lastJobTime, garden));
+    }
+
+    /*
+     * The JobScheduler runs a job at or some time after its trigger
+     */
+    private long delay(long when) {
+        if (when == JobPlanner.NO_JOB) {
+            return when;
+        }
+        return Math.max(when, clock.time) + (long) (random.nextDouble() * jitterInMillis);
+    }
+
+    private void endDay(int day) {
+        for (int i = 0; i < plants; ++i) {
+            if (garden.isWateringDay(i, day)) {
+                ++wateringDays;
+                if (notifiedDays[i] != day) {
+                    ++missed;
+                }
+            }
+        }
+    }
+
+    private void report(long wallMillis) {
+        System.out.printf("Simulated %d days of %d plants%n", days, plants);
+        System.out.printf("  wakeups:          %d%n", wakeups);
+        System.out.printf("  notifications:    %d, counting %d plants%n", notifications, plantsNotified);
+        System.out.printf("  app visits:       %d%n", visits);
+        System.out.printf("  watering days:    %d%n", wateringDays);
+        System.out.printf("  missed waterings: %d%n", missed);
+        System.out.printf("  CPU per run:      mean %.1f us, max %.1f us, total %.1f ms%n",
+                wakeups > 0 ? totalCpuNanos / 1000.0 / wakeups : 0, maxCpuNanos / 1000.0, totalCpuNanos / 1000000.0);
+        System.out.printf("  wall time:        %d ms%n", wallMillis);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+}
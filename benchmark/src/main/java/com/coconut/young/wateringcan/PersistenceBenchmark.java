@@ -0,0 +1,136 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.storage.ScheduleCsvReader;
+import com.coconut.young.wateringcan.storage.ScheduleCsvWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parts of persistence that run without SQLite: decoding rows into the ScheduleTable the list is
+ * paged into, and the CSV export and import. The database itself needs a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({ "10", "1000", "10000", "100000" })
+    public int size;
+
+    private ScheduleTable table;
+    // the columns as a cursor returns them
+    private long[] ids;
+    private String[] names;
+    private int[] refDays;
+    private int[] intervals;
+    private boolean[] waters;
+    private String csv;
+
+    @Setup
+    public void setUp() throws IOException {
+        table = BenchmarkSchedules.create(size, PlantSchedule.today());
+
+        ids = new long[size];
+        names = new String[size];
+        refDays = new int[size];
+        intervals = new int[size];
+        waters = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            ids[i] = table.getId(i);
+            // a cursor returns a new String for every row
+            names[i] = new String(table.getName(i));
+            refDays[i] = table.getRefDay(i);
+            intervals[i] = table.getWaterInterval(i);
+            waters[i] = table.getWaterToday(i);
+        }
+
+        StringWriter out = new StringWriter();
+        ScheduleCsvWriter writer = new ScheduleCsvWriter(out);
+        for (int i = 0; i < size; ++i) {
+            writer.write(table, i);
+        }
+        writer.finish();
+        csv = out.toString();
+    }
+
+    @Benchmark
+    public ScheduleTable loadTable() {
+        ScheduleTable loaded = new ScheduleTable(size);
+        for (int i = 0; i < size; ++i) {
+            loaded.add(ids[i], names[i], refDays[i], intervals[i], waters[i]);
+        }
+        return loaded;
+    }
+
+    @Benchmark
+    public long exportCsv() throws IOException {
+        CountingWriter out = new CountingWriter();
+        ScheduleCsvWriter writer = new ScheduleCsvWriter(out);
+        for (int i = 0; i < size; ++i) {
+            writer.write(table, i);
+        }
+        writer.finish();
+        return out.count;
+    }
+
+    @Benchmark
+    public void importCsv(Blackhole blackhole) throws IOException {
+        ScheduleCsvReader reader = new ScheduleCsvReader(new BufferedReader(new StringReader(csv)));
+        PlantSchedule sched;
+        while ((sched = reader.read()) != null) {
+            blackhole.consume(sched);
+        }
+        reader.close();
+    }
+
+    /*
+     * Discards what is written, so only the cost of formatting is measured
+     */
+    private static class CountingWriter extends Writer {
+        private long count = 0;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(int c) {
+            ++count;
+        }
+
+        @Override
+        public void write(String text) {
+            count += text.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.utils.DateCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The schedule math: building a PlantSchedule the way the EditActivity and imports do, and rendering
+ * the text of its list row. Each operation covers the whole list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlantScheduleBenchmark {
+
+    @Param({ "10", "1000", "10000", "100000" })
+    public int size;
+
+    private int today;
+    private PlantSchedule[] schedules;
+    private String[] names;
+    private long[] refTimes;
+    private int[] intervals;
+    private String[] dates;
+    private String[] intervalTexts;
+
+    @Setup
+    public void setUp() {
+        today = PlantSchedule.today();
+        ScheduleTable table = BenchmarkSchedules.create(size, today);
+
+        schedules = new PlantSchedule[size];
+        names = new String[size];
+        refTimes = new long[size];
+        intervals = new int[size];
+        dates = new String[size];
+        intervalTexts = new String[size];
+        for (int i = 0; i < size; ++i) {
+            schedules[i] = new PlantSchedule(table.getId(i), table.getName(i), table.getRefDay(i),
+                    table.getWaterInterval(i), table.getWaterToday(i));
+            names[i] = table.getName(i);
+            refTimes[i] = PlantSchedule.getStartOfDay(table.getRefDay(i));
+            intervals[i] = table.getWaterInterval(i);
+            dates[i] = DateCodec.formatDay(table.getRefDay(i));
+            intervalTexts[i] = Integer.toString(intervals[i]);
+        }
+    }
+
+    // the constructor evaluates the reference date and waterToday
+    @Benchmark
+    public void construct(Blackhole blackhole) {
+        for (int i = 0; i < size; ++i) {
+            blackhole.consume(new PlantSchedule(names[i], refTimes[i], intervals[i]));
+        }
+    }
+
+    // the entered fields are parsed and checked, then the constructor runs
+    @Benchmark
+    public void parseInput(Blackhole blackhole) throws ParseException {
+        for (int i = 0; i < size; ++i) {
+            blackhole.consume(ScheduleInput.parse(names[i], dates[i], intervalTexts[i]));
+        }
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) {
+        for (int i = 0; i < size; ++i) {
+            blackhole.consume(schedules[i].toString(today));
+        }
+    }
+}
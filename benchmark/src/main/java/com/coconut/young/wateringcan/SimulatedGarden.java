@@ -0,0 +1,112 @@
+package com.coconut.young.wateringcan;
+
+import com.coconut.young.wateringcan.storage.ScheduleDueIndex;
+import com.coconut.young.wateringcan.storage.ScheduleVisitor;
+
+/**
+ * An in-memory stand-in for the ScheduleStore, for simulating the notification pipeline on the JVM
+ *
+ * Like the store, each PlantSchedule keeps the next watering day it was written with, and forEachDue
+ * only visits the PlantSchedules whose next watering day has come, rolling it forward after the visit.
+ */
+/*Package-Private*/ class SimulatedGarden implements ScheduleDueIndex {
+
+    private final int size;
+    private final int[] refDays;
+    private final int[] intervals;
+    private final boolean[] waters;
+    private final int[] nextDueDays;
+
+    /**
+     * @param table the PlantSchedules to plant, every one is stored as watered
+     * @param today the day the PlantSchedules are stored on
+     */
+    /*Package-Private*/ SimulatedGarden(ScheduleTable table, int today) {
+        size = table.size();
+        refDays = new int[size];
+        intervals = new int[size];
+        waters = new boolean[size];
+        nextDueDays = new int[size];
+        for (int i = 0; i < size; ++i) {
+            refDays[i] = table.getRefDay(i);
+            intervals[i] = table.getWaterInterval(i);
+            nextDueDays[i] = get(i).getNextWateringDay(today);
+        }
+    }
+
+    /*Package-Private*/ int size() {
+        return size;
+    }
+
+    /*Package-Private*/ boolean isWateringDay(int index, int day) {
+        return PlantSchedule.isWateringDay(refDays[index], intervals[index], day);
+    }
+
+    /**
+     * Pass every PlantSchedule due on or before a day to a ScheduleVisitor and store what it changes,
+     * as ScheduleStore.forEachDue does with writeBack set. Each PlantSchedule's id is its index.
+     *
+     * @return the number of PlantSchedules visited
+     */
+    /*Package-Private*/ int forEachDue(int day, ScheduleVisitor visitor) {
+        int visited = 0;
+        for (int i = 0; i < size; ++i) {
+            if (nextDueDays[i] > day) {
+                continue;
+            }
+            PlantSchedule sched = get(i);
+            visitor.visit(sched);
+            store(i, sched, day);
+            ++visited;
+        }
+        return visited;
+    }
+
+    /**
+     * Uncheck every PlantSchedule that needs water, as the user does in the MainActivity
+     *
+     * @return the number of PlantSchedules watered
+     */
+    /*Package-Private*/ int waterAll(int day) {
+        int watered = 0;
+        for (int i = 0; i < size; ++i) {
+            if (waters[i]) {
+                PlantSchedule sched = new PlantSchedule(i, null, refDays[i], intervals[i], false);
+                store(i, sched, day);
+                ++watered;
+            }
+        }
+        return watered;
+    }
+
+    @Override
+    public int getNextDueDay(int day) {
+        int nextDueDay = NOTHING_DUE;
+        for (int i = 0; i < size; ++i) {
+            // rows on or before the day may not have been rolled forward, as in the store
+            int rowDay = nextDueDays[i] <= day ? get(i).getNextWateringDay(day) : nextDueDays[i];
+            nextDueDay = Math.min(nextDueDay, rowDay);
+        }
+        return nextDueDay;
+    }
+
+    @Override
+    public boolean hasUnwatered(int day) {
+        for (int i = 0; i < size; ++i) {
+            if (waters[i] && nextDueDays[i] <= day && PlantSchedule.isWateringDay(refDays[i], intervals[i], day)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PlantSchedule get(int index) {
+        return new PlantSchedule(index, null, refDays[index], intervals[index], waters[index]);
+    }
+
+    private void store(int index, PlantSchedule sched, int day) {
+        refDays[index] = sched.getRefDay();
+        waters[index] = sched.getWaterToday();
+        nextDueDays[index] = sched.getNextWateringDay(day);
+    }
+}